@@ -14,6 +14,7 @@ import android.widget.ImageView;
 import com.nostra13.example.universalimageloader.Constants.Extra;
 import com.nostra13.universalimageloader.core.DisplayImageOptions;
 import com.nostra13.universalimageloader.core.assist.PauseOnScrollListener;
+import com.nostra13.universalimageloader.core.assist.PausePolicy;
 
 /**
  * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
@@ -48,7 +49,7 @@ public class ImageGridActivity extends BaseActivity {
 				startImageGalleryActivity(position);
 			}
 		});
-		gridView.setOnScrollListener(new PauseOnScrollListener(true, true));
+		gridView.setOnScrollListener(new PauseOnScrollListener(PausePolicy.NETWORK, true, true));
 	}
 
 	private void startImageGalleryActivity(int position) {
@@ -13,6 +13,7 @@ import android.widget.TextView;
 import com.nostra13.example.universalimageloader.Constants.Extra;
 import com.nostra13.universalimageloader.core.DisplayImageOptions;
 import com.nostra13.universalimageloader.core.assist.PauseOnScrollListener;
+import com.nostra13.universalimageloader.core.assist.PrefetchOnScrollListener;
 import com.nostra13.universalimageloader.core.display.RoundedBitmapDisplayer;
 
 /**
@@ -55,7 +56,14 @@ public class ImageListActivity extends BaseActivity {
 			}
 		});
 
-		listView.setOnScrollListener(new PauseOnScrollListener(false, true));
+		// Images of next 5 items in scroll direction are cached on disc in advance
+		PrefetchOnScrollListener.ImageUriProvider uriProvider = new PrefetchOnScrollListener.ImageUriProvider() {
+			@Override
+			public String getImageUri(int position) {
+				return imageUrls[position];
+			}
+		};
+		listView.setOnScrollListener(new PrefetchOnScrollListener(uriProvider, 5, null, options, new PauseOnScrollListener(false, true)));
 	}
 
 	private void startImageGalleryActivity(int position) {
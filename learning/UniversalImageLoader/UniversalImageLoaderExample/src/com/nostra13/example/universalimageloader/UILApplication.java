@@ -3,7 +3,7 @@ package com.nostra13.example.universalimageloader;
 import android.app.Application;
 
 import com.nostra13.example.universalimageloader.downloader.ExtendedImageDownloader;
-import com.nostra13.universalimageloader.cache.disc.naming.Md5FileNameGenerator;
+import com.nostra13.universalimageloader.cache.disc.naming.Md5HexFileNameGenerator;
 import com.nostra13.universalimageloader.core.ImageLoader;
 import com.nostra13.universalimageloader.core.ImageLoaderConfiguration;
 import com.nostra13.universalimageloader.core.assist.QueueProcessingType;
@@ -24,7 +24,7 @@ public class UILApplication extends Application {
 			.threadPriority(Thread.NORM_PRIORITY - 2)
 			.memoryCacheSize(2 * 1024 * 1024) // 2 Mb
 			.denyCacheImageMultipleSizesInMemory()
-			.discCacheFileNameGenerator(new Md5FileNameGenerator())
+			.discCacheFileNameGenerator(new Md5HexFileNameGenerator())
 			.imageDownloader(new ExtendedImageDownloader(getApplicationContext()))
 			.tasksProcessingOrder(QueueProcessingType.LIFO)
 			.enableLogging() // Not necessary in common
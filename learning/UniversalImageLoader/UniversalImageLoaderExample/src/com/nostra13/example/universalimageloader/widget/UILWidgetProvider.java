@@ -8,7 +8,7 @@ import android.graphics.Bitmap;
 import android.widget.RemoteViews;
 
 import com.nostra13.example.universalimageloader.R;
-import com.nostra13.universalimageloader.cache.disc.naming.Md5FileNameGenerator;
+import com.nostra13.universalimageloader.cache.disc.naming.Md5HexFileNameGenerator;
 import com.nostra13.universalimageloader.core.DisplayImageOptions;
 import com.nostra13.universalimageloader.core.ImageLoader;
 import com.nostra13.universalimageloader.core.ImageLoaderConfiguration;
@@ -34,7 +34,7 @@ public class UILWidgetProvider extends AppWidgetProvider {
 		// Initialize ImageLoader with configuration.
 		ImageLoaderConfiguration config = new ImageLoaderConfiguration.Builder(context).threadPoolSize(3).threadPriority(Thread.NORM_PRIORITY - 2)
 				.memoryCacheSize(1500000) // 1.5 Mb
-				.denyCacheImageMultipleSizesInMemory().discCacheFileNameGenerator(new Md5FileNameGenerator()).enableLogging() // Not necessary in common
+				.denyCacheImageMultipleSizesInMemory().discCacheFileNameGenerator(new Md5HexFileNameGenerator()).enableLogging() // Not necessary in common
 				.build();
 		ImageLoader.getInstance().init(config);
 
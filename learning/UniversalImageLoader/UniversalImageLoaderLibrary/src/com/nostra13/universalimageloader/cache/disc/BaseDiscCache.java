@@ -1,44 +1,241 @@
 package com.nostra13.universalimageloader.cache.disc;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import com.nostra13.universalimageloader.cache.disc.naming.FileNameGenerator;
 import com.nostra13.universalimageloader.core.DefaultConfigurationFactory;
+import com.nostra13.universalimageloader.utils.L;
+import com.nostra13.universalimageloader.utils.StorageUtils;
 
 /**
- * Base disc cache. Implements common functionality for disc cache.
- * 
+ * Base disc cache. Implements common functionality for disc cache.<br />
+ * Cached files are distributed among 256 subdirectories of cache directory by hash of file name, so directories stay
+ * small even if cache contains tens of thousands of files. Files which were cached in cache directory itself (by
+ * previous versions of library) are moved into subdirectories by background thread which is started on first
+ * {@link #get(String)}. File which is requested before it's moved is moved right on request. If cache
+ * {@linkplain #isCacheDirOwned() owns} its directory then all files without extension are moved, otherwise only files
+ * which names look like generated names of cached files. Migrated directory is marked by layout file, so it isn't
+ * scanned again.<br />
+ * Files are written into cache through {@linkplain #getTempFile(File) temporary files} which are kept in separate
+ * directory. Temporary files which were left by interrupted writings are deleted when cache is created.
+ *
  * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
  * @see DiscCacheAware
  * @see FileNameGenerator
  */
 public abstract class BaseDiscCache implements DiscCacheAware {
 
+	/** Library specific name, so temporary directories of other components in shared cache directory aren't touched */
+	private static final String TEMP_DIR_NAME = ".uil-tmp";
+	/** File which marks cache directory whose files were moved into subdirectories */
+	private static final String LAYOUT_MARKER_FILE_NAME = ".layout-subdirs";
+	private static final String MIGRATION_THREAD_NAME = "uil-disc-cache-migration";
+
+	/** Count of subdirectories for cached files, must be a power of two */
+	private static final int SUBDIR_COUNT = 256;
+
 	private File cacheDir;
+	private File tempDir;
+	/** Subdirectories which are known to exist (<b>null</b> - if subdirectory wasn't used yet) */
+	private final File[] subdirs = new File[SUBDIR_COUNT];
 
 	private FileNameGenerator fileNameGenerator;
 
+	private final AtomicBoolean migrationStarted = new AtomicBoolean(false);
+	/** Whether all files of flat layout were moved into subdirectories */
+	private volatile boolean migrated = false;
+
 	public BaseDiscCache(File cacheDir) {
 		this(cacheDir, DefaultConfigurationFactory.createFileNameGenerator());
 	}
 
 	public BaseDiscCache(File cacheDir, FileNameGenerator fileNameGenerator) {
 		this.cacheDir = cacheDir;
+		this.tempDir = new File(cacheDir, TEMP_DIR_NAME);
 		this.fileNameGenerator = fileNameGenerator;
+		deleteTempFiles();
 	}
 
 	@Override
 	public File get(String key) {
 		String fileName = fileNameGenerator.generate(key);
-		return new File(cacheDir, fileName);
+		File file = new File(getSubdir(fileName), fileName);
+		if (!migrated) {
+			startMigrationIfNeed();
+			moveFileIntoSubdir(new File(cacheDir, fileName), file);
+		}
+		return file;
+	}
+
+	/**
+	 * Returns temporary file for writing of incoming cache file. Temporary file should be moved into cache file's place
+	 * after writing is finished. Temporary files are unique for every thread.
+	 */
+	public File getTempFile(File file) {
+		return new File(tempDir, file.getName() + '.' + Thread.currentThread().getId());
 	}
 
 	@Override
 	public void clear() {
-		File[] files = cacheDir.listFiles();
-		if (files != null) {
-			for (File f : files) {
-				f.delete();
+		for (File cachedFile : listCachedFiles()) {
+			cachedFile.delete();
+		}
+		if (!migrated) {
+			for (File flatFile : listFlatFiles()) {
+				flatFile.delete();
+			}
+		}
+	}
+
+	/**
+	 * Returns true if cache directory is used only by this cache (so all files without extension in it are cached
+	 * files). By default only individual ImageLoader's cache directory is owned, caches which require separate
+	 * directory should override this method.
+	 */
+	protected boolean isCacheDirOwned() {
+		return StorageUtils.isIndividualCacheDirectory(cacheDir);
+	}
+
+	/**
+	 * Is called when cached file of flat layout was moved into subdirectory (on background thread or on
+	 * {@link #get(String)}). Cache can add file into its index here.
+	 */
+	protected void onFileMigrated(File file) {
+	}
+
+	/**
+	 * Returns subdirectory for cached file. Subdirectory is created on first usage (it's re-created by
+	 * {@link com.nostra13.universalimageloader.utils.AtomicFile AtomicFile} if it was deleted later).
+	 */
+	private File getSubdir(String fileName) {
+		int hash = fileName.hashCode();
+		int index = (hash ^ (hash >>> 16)) & (SUBDIR_COUNT - 1);
+		File subdir = subdirs[index];
+		if (subdir == null) {
+			subdir = new File(cacheDir, getSubdirName(index));
+			subdir.mkdirs();
+			subdirs[index] = subdir;
+		}
+		return subdir;
+	}
+
+	private static String getSubdirName(int index) {
+		return Integer.toHexString(index | SUBDIR_COUNT).substring(1);
+	}
+
+	/** Returns all cached files from subdirectories of cache directory */
+	protected List<File> listCachedFiles() {
+		List<File> cachedFiles = new ArrayList<File>();
+		for (int i = 0; i < SUBDIR_COUNT; i++) {
+			File[] files = new File(cacheDir, getSubdirName(i)).listFiles();
+			if (files != null) {
+				for (File file : files) {
+					cachedFiles.add(file);
+				}
+			}
+		}
+		return cachedFiles;
+	}
+
+	private void startMigrationIfNeed() {
+		if (!migrationStarted.compareAndSet(false, true)) return;
+
+		Thread migrationThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				migrateFlatLayout();
+			}
+		}, MIGRATION_THREAD_NAME);
+		migrationThread.setPriority(Thread.MIN_PRIORITY);
+		migrationThread.setDaemon(true);
+		migrationThread.start();
+	}
+
+	/** Moves files of flat cache layout into subdirectories (if it wasn't done yet) and marks cache directory */
+	private void migrateFlatLayout() {
+		File layoutMarkerFile = new File(cacheDir, LAYOUT_MARKER_FILE_NAME);
+		if (!layoutMarkerFile.exists()) {
+			for (File flatFile : listFlatFiles()) {
+				String fileName = flatFile.getName();
+				moveFileIntoSubdir(flatFile, new File(getSubdir(fileName), fileName));
+			}
+			try {
+				cacheDir.mkdirs();
+				layoutMarkerFile.createNewFile();
+			} catch (IOException e) {
+				L.e(e);
+			}
+		}
+		migrated = true;
+	}
+
+	/**
+	 * Returns cached files of flat layout (files cached right in cache directory). Names of cached files haven't
+	 * extensions. Other files of shared cache directory are skipped.
+	 */
+	private List<File> listFlatFiles() {
+		List<File> flatFiles = new ArrayList<File>();
+		String[] fileNames = cacheDir.list();
+		if (fileNames == null) return flatFiles;
+
+		boolean cacheDirOwned = isCacheDirOwned();
+		for (String fileName : fileNames) {
+			if (fileName.indexOf('.') >= 0 || isSubdirName(fileName)) continue;
+			if (!cacheDirOwned && !isGeneratedFileName(fileName)) continue;
+
+			File file = new File(cacheDir, fileName);
+			if (file.isFile()) {
+				flatFiles.add(file);
+			}
+		}
+		return flatFiles;
+	}
+
+	/** Moves file of flat layout into its subdirectory. File is deleted if it was cached again into subdirectory. */
+	private void moveFileIntoSubdir(File flatFile, File file) {
+		if (file.exists()) {
+			flatFile.delete();
+		} else if (flatFile.renameTo(file)) {
+			onFileMigrated(file);
+		}
+	}
+
+	/**
+	 * Returns true if file name looks like name generated by library's {@link FileNameGenerator file name generators}
+	 * (hash code, MD5 as number or hex string): it consists of digits, lower case letters and minus and contains digit.
+	 */
+	private static boolean isGeneratedFileName(String fileName) {
+		boolean hasDigit = false;
+		for (int i = 0; i < fileName.length(); i++) {
+			char c = fileName.charAt(i);
+			if (c >= '0' && c <= '9') {
+				hasDigit = true;
+			} else if ((c < 'a' || c > 'z') && c != '-') {
+				return false;
+			}
+		}
+		return hasDigit;
+	}
+
+	private boolean isSubdirName(String fileName) {
+		if (fileName.length() != 2) return false;
+		try {
+			return Integer.parseInt(fileName, 16) < SUBDIR_COUNT;
+		} catch (NumberFormatException e) {
+			return false;
+		}
+	}
+
+	/** Deletes temporary files which were left by interrupted writings */
+	private void deleteTempFiles() {
+		File[] tempFiles = tempDir.listFiles();
+		if (tempFiles != null) {
+			for (File tempFile : tempFiles) {
+				tempFile.delete();
 			}
 		}
 	}
@@ -46,4 +243,4 @@ public abstract class BaseDiscCache implements DiscCacheAware {
 	protected File getCacheDir() {
 		return cacheDir;
 	}
-}
\ No newline at end of file
+}
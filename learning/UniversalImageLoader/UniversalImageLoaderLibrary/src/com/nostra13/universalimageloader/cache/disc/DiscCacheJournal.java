@@ -0,0 +1,280 @@
+package com.nostra13.universalimageloader.cache.disc;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.nostra13.universalimageloader.utils.L;
+
+/**
+ * Append-only journal of disc cache. Keeps names, sizes and last usage dates of cached files, so cache index can be
+ * restored by one sequential read instead of scanning of cache directory.<br />
+ * Journal consists of header and records. Each record is a line:
+ * <ul>
+ * <li><b>E &lt;file path&gt;</b> - file is being written into cache (put record follows when file is cached)</li>
+ * <li><b>P &lt;file path&gt; &lt;size&gt; &lt;last usage date&gt;</b> - file was put into cache</li>
+ * <li><b>R &lt;file path&gt; &lt;last usage date&gt;</b> - file was used</li>
+ * <li><b>D &lt;file path&gt;</b> - file was deleted from cache</li>
+ * </ul>
+ * File paths are relative to cache directory. Cache file is moved into its place before its put record is written, so
+ * edit record without following put record means that file could be changed without journaling (e.g.
+ * process was killed between these steps). Such files are {@linkplain #getUnfinishedEdits() reconciled} with cache
+ * directory when cache is opened.<br />
+ * Records are listed in order of file usages. Journal is compacted (rewritten with actual records only) when it has too
+ * many redundant records.
+ *
+ * @see LimitedDiscCache
+ */
+final class DiscCacheJournal {
+
+	private static final String JOURNAL_FILE_NAME = ".journal";
+	private static final String JOURNAL_TEMP_FILE_NAME = ".journal.tmp";
+
+	private static final String MAGIC = "com.nostra13.universalimageloader.DiscCacheJournal";
+	private static final String VERSION = "3";
+
+	private static final String EDIT = "E";
+	private static final String PUT = "P";
+	private static final String READ = "R";
+	private static final String DELETE = "D";
+
+	/** Min count of redundant records which causes journal compaction */
+	private static final int COMPACTION_THRESHOLD = 2000;
+	private static final int BUFFER_SIZE = 8 * 1024; // 8 Kb
+
+	/** Record of cached file */
+	static final class Entry {
+		final String fileName;
+		final long size;
+		final long lastUsageDate;
+
+		Entry(String fileName, long size, long lastUsageDate) {
+			this.fileName = fileName;
+			this.size = size;
+			this.lastUsageDate = lastUsageDate;
+		}
+	}
+
+	private final File journalFile;
+	private final File journalTempFile;
+	/** Identifies content of journal (sizes of files depend on cache implementation) */
+	private final String cacheType;
+
+	private Writer writer;
+	private int redundantRecordCount;
+	private boolean truncated;
+	/** Files whose edit records weren't followed by put records yet */
+	private final Set<String> unfinishedEdits = new LinkedHashSet<String>();
+
+	DiscCacheJournal(File cacheDir, String cacheType) {
+		journalFile = new File(cacheDir, JOURNAL_FILE_NAME);
+		journalTempFile = new File(cacheDir, JOURNAL_TEMP_FILE_NAME);
+		this.cacheType = cacheType;
+	}
+
+	/**
+	 * Reads journal and opens it for appending.
+	 *
+	 * @return Entries of cached files in order of their usages (the least recently used first) or <b>null</b> if
+	 *         journal doesn't exist or it can't be read. Then journal must be {@linkplain #rebuild(Collection) rebuilt}.
+	 */
+	synchronized List<Entry> read() {
+		if (!journalFile.exists()) return null;
+
+		Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+		unfinishedEdits.clear();
+		int recordCount = 0;
+		BufferedReader reader = null;
+		try {
+			reader = new BufferedReader(new InputStreamReader(new FileInputStream(journalFile)), BUFFER_SIZE);
+			if (!MAGIC.equals(reader.readLine()) || !VERSION.equals(reader.readLine()) || !cacheType.equals(reader.readLine())
+					|| !"".equals(reader.readLine())) {
+				return null;
+			}
+
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (!readRecord(line, entries)) {
+					// Journal tail was lost (e.g. process was killed while writing)
+					truncated = true;
+					break;
+				}
+				recordCount++;
+			}
+		} catch (IOException e) {
+			L.e(e);
+			return null;
+		} finally {
+			closeSilently(reader);
+		}
+
+		redundantRecordCount = recordCount - entries.size();
+		try {
+			writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(journalFile, true)), BUFFER_SIZE);
+		} catch (IOException e) {
+			L.e(e);
+			return null;
+		}
+		return new ArrayList<Entry>(entries.values());
+	}
+
+	private boolean readRecord(String line, Map<String, Entry> entries) {
+		String[] parts = line.split(" ");
+		try {
+			if (EDIT.equals(parts[0]) && parts.length == 2) {
+				unfinishedEdits.add(parts[1]);
+			} else if (PUT.equals(parts[0]) && parts.length == 4) {
+				unfinishedEdits.remove(parts[1]);
+				entries.remove(parts[1]);
+				entries.put(parts[1], new Entry(parts[1], Long.parseLong(parts[2]), Long.parseLong(parts[3])));
+			} else if (READ.equals(parts[0]) && parts.length == 3) {
+				Entry entry = entries.remove(parts[1]);
+				if (entry != null) {
+					entries.put(parts[1], new Entry(parts[1], entry.size, Long.parseLong(parts[2])));
+				}
+			} else if (DELETE.equals(parts[0]) && parts.length == 2) {
+				entries.remove(parts[1]);
+			} else {
+				return false;
+			}
+		} catch (NumberFormatException e) {
+			return false;
+		}
+		return true;
+	}
+
+	/** Returns true if journal tail was lost. Then files which were cached lately may be missed in journal. */
+	synchronized boolean isTruncated() {
+		return truncated;
+	}
+
+	/**
+	 * Returns paths of files which were being written when journal was closed last time (e.g. process was killed), so
+	 * these files may exist in cache directory without put records or they may differ from journaled files. Returned
+	 * files are forgotten, so they must be reconciled with cache directory by caller.
+	 */
+	synchronized List<String> getUnfinishedEdits() {
+		List<String> fileNames = new ArrayList<String>(unfinishedEdits);
+		unfinishedEdits.clear();
+		return fileNames;
+	}
+
+	/** Returns true if journal contains too many redundant records and it should be rebuilt */
+	synchronized boolean isCompactionNeeded(int entryCount) {
+		return redundantRecordCount >= COMPACTION_THRESHOLD && redundantRecordCount >= entryCount;
+	}
+
+	/** Writes edit record and flushes it, so it's saved before cache file is moved into its place */
+	synchronized void writeEdit(String fileName) {
+		unfinishedEdits.add(fileName);
+		writeRecord(EDIT + ' ' + fileName, true, 1);
+	}
+
+	/**
+	 * @param replaced
+	 *            <b>true</b> - if journal contains put record of this file which isn't deleted yet, it becomes redundant
+	 */
+	synchronized void writePut(String fileName, long size, long lastUsageDate, boolean replaced) {
+		unfinishedEdits.remove(fileName);
+		writeRecord(PUT + ' ' + fileName + ' ' + size + ' ' + lastUsageDate, true, replaced ? 1 : 0);
+	}
+
+	synchronized void writeRead(String fileName, long lastUsageDate) {
+		writeRecord(READ + ' ' + fileName + ' ' + lastUsageDate, false, 1);
+	}
+
+	/** Writes delete record. Record is flushed with next put record. */
+	synchronized void writeDelete(String fileName) {
+		// Delete record and the previous record of file are redundant
+		writeRecord(DELETE + ' ' + fileName, false, 2);
+	}
+
+	/**
+	 * @param redundantRecords
+	 *            Count of records which become redundant after this record (including it)
+	 */
+	private void writeRecord(String record, boolean flush, int redundantRecords) {
+		if (writer == null) return;
+
+		try {
+			writer.write(record);
+			writer.write('\n');
+			if (flush) {
+				writer.flush();
+			}
+			redundantRecordCount += redundantRecords;
+		} catch (IOException e) {
+			L.e(e);
+			// Journal doesn't match cache anymore. Cache directory will be scanned on next start.
+			close();
+			journalFile.delete();
+		}
+	}
+
+	/**
+	 * Rewrites journal with incoming entries only (the least recently used first) and edit records of files which are
+	 * being written now. Journal is replaced atomically, so it's never broken even if process is killed during
+	 * rebuilding.
+	 */
+	synchronized void rebuild(Collection<Entry> entries) {
+		close();
+
+		Writer tempWriter = null;
+		try {
+			tempWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(journalTempFile)), BUFFER_SIZE);
+			tempWriter.write(MAGIC + '\n' + VERSION + '\n' + cacheType + "\n\n");
+			for (Entry entry : entries) {
+				tempWriter.write(PUT + ' ' + entry.fileName + ' ' + entry.size + ' ' + entry.lastUsageDate + '\n');
+			}
+			for (String fileName : unfinishedEdits) {
+				tempWriter.write(EDIT + ' ' + fileName + '\n');
+			}
+			tempWriter.close();
+			tempWriter = null;
+
+			if (!journalTempFile.renameTo(journalFile)) {
+				throw new IOException("Can't rename journal file " + journalTempFile);
+			}
+			writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(journalFile, true)), BUFFER_SIZE);
+			redundantRecordCount = unfinishedEdits.size();
+			truncated = false;
+		} catch (IOException e) {
+			L.e(e);
+			closeSilently(tempWriter);
+			journalTempFile.delete();
+			journalFile.delete();
+		}
+	}
+
+	/** Flushes and closes journal. Journal can be reopened by {@link #read()} or {@link #rebuild(Collection)}. */
+	synchronized void close() {
+		if (writer != null) {
+			closeSilently(writer);
+			writer = null;
+		}
+	}
+
+	private static void closeSilently(Closeable closeable) {
+		if (closeable != null) {
+			try {
+				closeable.close();
+			} catch (IOException e) {
+				// Do nothing
+			}
+		}
+	}
+}
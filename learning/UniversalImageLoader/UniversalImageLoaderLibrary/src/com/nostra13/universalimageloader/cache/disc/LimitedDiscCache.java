@@ -1,30 +1,52 @@
 package com.nostra13.universalimageloader.cache.disc;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
 
 import com.nostra13.universalimageloader.cache.disc.naming.FileNameGenerator;
 import com.nostra13.universalimageloader.core.DefaultConfigurationFactory;
 
 /**
- * Abstract disc cache limited by some parameter. If cache exceeds specified limit then file with the most oldest last
- * usage date will be deleted.
- * 
+ * Abstract disc cache limited by some parameter. If cache exceeds specified limit then files with the most oldest last
+ * usage date are deleted. Files are deleted by batches: cache is cleaned up to 90% of limit, so next files can be
+ * cached without deletions.<br />
+ * Names, sizes and usage dates of cached files are kept in {@linkplain DiscCacheJournal journal}, so cache is opened by
+ * one sequential read of journal. Cache directory is scanned only if journal is missing or broken.<br />
+ * Usage dates are tracked in memory (modification dates of files aren't changed), so {@link #get(String)} doesn't
+ * write anything on disc. Usages are saved into journal by batches on next {@link #put(String, File)} call.
+ *
  * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
  * @see BaseDiscCache
  * @see FileNameGenerator
  */
 public abstract class LimitedDiscCache extends BaseDiscCache {
 
-	private int cacheSize = 0;
+	/** Part of size limit which cache is cleaned up to when limit is exceeded */
+	private static final float LOW_WATER_MARK = 0.9f;
 
-	private int sizeLimit;
+	private long cacheSize = 0;
 
-	private final Map<File, Long> lastUsageDates = Collections.synchronizedMap(new HashMap<File, Long>());
+	private final long sizeLimit;
+	private final long lowWaterMark;
+
+	/** Index of cached files in access order (the least recently used first) */
+	private final Map<File, IndexEntry> index = new LinkedHashMap<File, IndexEntry>(16, 0.75f, true);
+	/** Used files which usages weren't saved into journal yet (the least recently used first) */
+	private final Set<IndexEntry> unsavedUsages = new LinkedHashSet<IndexEntry>();
+	/** Cache files which are being written at this moment (by IDs of writing threads) */
+	private final Map<Long, File> writtenFiles = new HashMap<Long, File>();
+
+	private final DiscCacheJournal journal;
 
 	/**
 	 * @param cacheDir
@@ -34,7 +56,7 @@ public abstract class LimitedDiscCache extends BaseDiscCache {
 	 *            Cache limit value. If cache exceeds this limit then file with the most oldest last usage date will be
 	 *            deleted.
 	 */
-	public LimitedDiscCache(File cacheDir, int sizeLimit) {
+	public LimitedDiscCache(File cacheDir, long sizeLimit) {
 		this(cacheDir, DefaultConfigurationFactory.createFileNameGenerator(), sizeLimit);
 	}
 
@@ -48,85 +70,262 @@ public abstract class LimitedDiscCache extends BaseDiscCache {
 	 *            Cache limit value. If cache exceeds this limit then file with the most oldest last usage date will be
 	 *            deleted.
 	 */
-	public LimitedDiscCache(File cacheDir, FileNameGenerator fileNameGenerator, int sizeLimit) {
+	public LimitedDiscCache(File cacheDir, FileNameGenerator fileNameGenerator, long sizeLimit) {
 		super(cacheDir, fileNameGenerator);
 		this.sizeLimit = sizeLimit;
-		calculateCacheSizeAndFillUsageMap();
+		this.lowWaterMark = (long) (sizeLimit * LOW_WATER_MARK);
+		journal = new DiscCacheJournal(cacheDir, getClass().getName());
+		restoreCacheIndex();
+	}
+
+	private synchronized void restoreCacheIndex() {
+		List<DiscCacheJournal.Entry> entries = journal.read();
+		if (entries == null) {
+			calculateCacheSizeAndFillUsageMap();
+			rebuildJournal();
+		} else {
+			File cacheDir = getCacheDir();
+			for (DiscCacheJournal.Entry entry : entries) {
+				addToIndex(new IndexEntry(new File(cacheDir, entry.fileName), entry.size, entry.lastUsageDate));
+			}
+			List<String> unfinishedEdits = journal.getUnfinishedEdits();
+			if (journal.isTruncated()) {
+				// Files cached lately may be missed in journal
+				synchronizeWithCacheDir();
+				rebuildJournal();
+			} else if (!unfinishedEdits.isEmpty()) {
+				// Process was killed while files were written into cache
+				for (String fileName : unfinishedEdits) {
+					synchronizeWithCacheDir(new File(cacheDir, fileName));
+				}
+				rebuildJournal();
+			}
+		}
 	}
 
 	private void calculateCacheSizeAndFillUsageMap() {
-		int size = 0;
-		File[] cachedFiles = getCacheDir().listFiles();
+		List<File> cachedFiles = listCachedFiles();
+		List<IndexEntry> entries = new ArrayList<IndexEntry>(cachedFiles.size());
 		for (File cachedFile : cachedFiles) {
-			size += getSize(cachedFile);
-			lastUsageDates.put(cachedFile, cachedFile.lastModified());
+			entries.add(new IndexEntry(cachedFile, getSize(cachedFile), cachedFile.lastModified()));
 		}
-		cacheSize = size;
+		addToIndexByUsageDates(entries);
+	}
+
+	/**
+	 * Adds files which are missed in index and removes files which don't exist anymore. Scans cache directory, so it's
+	 * called only when cache is opened.
+	 */
+	private void synchronizeWithCacheDir() {
+		Set<File> existingFiles = new HashSet<File>();
+		List<IndexEntry> missedEntries = new ArrayList<IndexEntry>();
+		for (File cachedFile : listCachedFiles()) {
+			existingFiles.add(cachedFile);
+			if (!index.containsKey(cachedFile)) {
+				missedEntries.add(new IndexEntry(cachedFile, getSize(cachedFile), cachedFile.lastModified()));
+			}
+		}
+		for (Iterator<IndexEntry> it = index.values().iterator(); it.hasNext();) {
+			IndexEntry entry = it.next();
+			if (!existingFiles.contains(entry.file)) {
+				it.remove();
+				cacheSize -= entry.size;
+			}
+		}
+		addToIndexByUsageDates(missedEntries);
+	}
+
+	/** Updates index entry of file which could be changed without journaling */
+	private void synchronizeWithCacheDir(File file) {
+		removeFromIndex(file);
+		if (file.exists()) {
+			addToIndex(new IndexEntry(file, getSize(file), file.lastModified()));
+		}
+	}
+
+	/**
+	 * Journals that incoming cache file is being written, so it's checked on next start if put record is missed.
+	 * Remembers the file until it's put into cache, so it isn't deleted by eviction after new version of file is moved
+	 * into its place. Thread writes one file at a time, so its previous file (which wasn't put) is forgotten.
+	 */
+	@Override
+	public File getTempFile(File file) {
+		synchronized (this) {
+			writtenFiles.put(Thread.currentThread().getId(), file);
+		}
+		journal.writeEdit(getJournalPath(file));
+		return super.getTempFile(file);
 	}
 
 	@Override
 	public void put(String key, File file) {
-		int valueSize = getSize(file);
-		while (cacheSize + valueSize > sizeLimit) {
-			int freedSize = removeNext();
-			if (freedSize == 0) break; // cache is empty (have nothing to delete)
-			cacheSize -= freedSize;
+		long valueSize = getSize(file);
+		List<File> evictedFiles = Collections.emptyList();
+		synchronized (this) {
+			saveUsages();
+			boolean replaced = removeFromIndex(file); // file can be re-cached
+			if (file.equals(writtenFiles.get(Thread.currentThread().getId()))) {
+				writtenFiles.remove(Thread.currentThread().getId());
+			}
+
+			if (cacheSize + valueSize > sizeLimit) {
+				evictedFiles = evict(lowWaterMark - valueSize);
+			}
+
+			long currentTime = System.currentTimeMillis();
+			addToIndex(new IndexEntry(file, valueSize, currentTime));
+			journal.writePut(getJournalPath(file), valueSize, currentTime, replaced);
 		}
-		cacheSize += valueSize;
 
-		Long currentTime = System.currentTimeMillis();
-		file.setLastModified(currentTime);
-		lastUsageDates.put(file, currentTime);
+		deleteFiles(evictedFiles);
+
+		synchronized (this) {
+			if (journal.isCompactionNeeded(index.size())) {
+				// Index is actual, so journal is compacted without scanning of cache directory
+				rebuildJournal();
+			}
+		}
 	}
 
 	@Override
 	public File get(String key) {
 		File file = super.get(key);
 
-		Long currentTime = System.currentTimeMillis();
-		file.setLastModified(currentTime);
-		lastUsageDates.put(file, currentTime);
+		synchronized (this) {
+			IndexEntry entry = index.get(file); // moves file to the end of access order
+			if (entry != null) {
+				entry.lastUsageDate = System.currentTimeMillis();
+				unsavedUsages.remove(entry);
+				unsavedUsages.add(entry);
+			}
+		}
 
 		return file;
 	}
 
+	/** Cache requires separate directory, so all files without extension in it are cached files */
+	@Override
+	protected boolean isCacheDirOwned() {
+		return true;
+	}
+
+	/** Adds file which was cached by previous version of library into index */
+	@Override
+	protected synchronized void onFileMigrated(File file) {
+		if (index.containsKey(file)) return;
+
+		long size = getSize(file);
+		long lastUsageDate = file.lastModified();
+		addToIndex(new IndexEntry(file, size, lastUsageDate));
+		journal.writePut(getJournalPath(file), size, lastUsageDate, false);
+	}
+
 	@Override
-	public void clear() {
-		lastUsageDates.clear();
+	public synchronized void clear() {
+		index.clear();
+		unsavedUsages.clear();
 		cacheSize = 0;
+		journal.close();
 		super.clear();
+		rebuildJournal();
 	}
 
-	/** Remove next file and returns it's size */
-	private int removeNext() {
-		if (lastUsageDates.isEmpty()) {
-			return 0;
+	/**
+	 * Removes the least recently used files from index until cache size doesn't exceed the target (low-water) size.
+	 * Files are moved into temporary directory here (so files which are cached again after that aren't touched) and
+	 * they should be deleted by {@link #deleteFiles(List)} out of lock. Files which are being written at this moment
+	 * are only removed from index, their new versions will be put soon.
+	 *
+	 * @return Moved files which should be deleted
+	 */
+	private List<File> evict(long targetSize) {
+		List<File> evictedFiles = new ArrayList<File>();
+		for (Iterator<IndexEntry> it = index.values().iterator(); cacheSize > targetSize && it.hasNext();) {
+			IndexEntry entry = it.next();
+			it.remove();
+			unsavedUsages.remove(entry);
+			cacheSize -= entry.size;
+			journal.writeDelete(getJournalPath(entry.file));
+			if (writtenFiles.containsValue(entry.file)) continue;
+
+			File evictedFile = super.getTempFile(entry.file);
+			if (entry.file.renameTo(evictedFile)) {
+				evictedFiles.add(evictedFile);
+			} else {
+				entry.file.delete();
+			}
 		}
+		return evictedFiles;
+	}
 
-		Long oldestUsage = null;
-		File mostLongUsedFile = null;
-		Set<Entry<File, Long>> entries = lastUsageDates.entrySet();
-		synchronized (lastUsageDates) {
-			for (Entry<File, Long> entry : entries) {
-				if (mostLongUsedFile == null) {
-					mostLongUsedFile = entry.getKey();
-					oldestUsage = entry.getValue();
-				} else {
-					Long lastValueUsage = entry.getValue();
-					if (lastValueUsage < oldestUsage) {
-						oldestUsage = lastValueUsage;
-						mostLongUsedFile = entry.getKey();
-					}
-				}
+	/** Deletes evicted files which were moved into temporary directory */
+	private void deleteFiles(List<File> files) {
+		for (File file : files) {
+			file.delete();
+		}
+	}
+
+	private void addToIndex(IndexEntry entry) {
+		index.put(entry.file, entry);
+		cacheSize += entry.size;
+	}
+
+	private void addToIndexByUsageDates(List<IndexEntry> entries) {
+		Collections.sort(entries, new Comparator<IndexEntry>() {
+			@Override
+			public int compare(IndexEntry lhs, IndexEntry rhs) {
+				return lhs.lastUsageDate < rhs.lastUsageDate ? -1 : (lhs.lastUsageDate == rhs.lastUsageDate ? 0 : 1);
 			}
+		});
+		for (IndexEntry entry : entries) {
+			addToIndex(entry);
+		}
+	}
+
+	/** @return true - if file was in index */
+	private boolean removeFromIndex(File file) {
+		IndexEntry entry = index.remove(file);
+		if (entry == null) return false;
+
+		cacheSize -= entry.size;
+		unsavedUsages.remove(entry);
+		return true;
+	}
+
+	/** Writes usages which were tracked since last save into journal */
+	private void saveUsages() {
+		for (IndexEntry entry : unsavedUsages) {
+			journal.writeRead(getJournalPath(entry.file), entry.lastUsageDate);
 		}
+		unsavedUsages.clear();
+	}
 
-		int fileSize = getSize(mostLongUsedFile);
-		if (mostLongUsedFile.delete()) {
-			lastUsageDates.remove(mostLongUsedFile);
+	/** Rewrites journal with actual index (the least recently used files first) */
+	private void rebuildJournal() {
+		List<DiscCacheJournal.Entry> entries = new ArrayList<DiscCacheJournal.Entry>(index.size());
+		for (IndexEntry entry : index.values()) {
+			entries.add(new DiscCacheJournal.Entry(getJournalPath(entry.file), entry.size, entry.lastUsageDate));
 		}
-		return fileSize;
+		journal.rebuild(entries);
+		unsavedUsages.clear();
+	}
+
+	/** Returns path of cached file relatively to cache directory (cached files are kept in subdirectories) */
+	private static String getJournalPath(File file) {
+		return file.getParentFile().getName() + '/' + file.getName();
 	}
 
-	protected abstract int getSize(File file);
+	protected abstract long getSize(File file);
+
+	private static class IndexEntry {
+		final File file;
+		final long size;
+		long lastUsageDate;
+
+		IndexEntry(File file, long size, long lastUsageDate) {
+			this.file = file;
+			this.size = size;
+			this.lastUsageDate = lastUsageDate;
+		}
+	}
 }
@@ -0,0 +1,38 @@
+package com.nostra13.universalimageloader.cache.disc;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Interface for disc cache which doesn't keep every cached image in separate file (e.g. it packs small images into
+ * large files). {@link #get(String)} returns file for writing of loaded image, cache can move image out of this file on
+ * {@link #put(String, File)}. So cached images must be checked and read through this interface, not through files.
+ * Small image can be put into cache right from memory, without intermediate file.
+ */
+public interface PackedDiscCacheAware extends DiscCacheAware {
+
+	/** Returns true if image for incoming key is cached */
+	boolean contains(String key);
+
+	/**
+	 * Opens stream of cached image.
+	 *
+	 * @return Stream of cached image or <b>null</b> if image isn't cached
+	 */
+	InputStream openStream(String key) throws IOException;
+
+	/** Removes cached image for incoming key (e.g. if it's broken) */
+	void remove(String key);
+
+	/** Returns max size of image (in bytes) which can be {@linkplain #put(String, byte[], int) put from memory} */
+	int getMaxPackedFileSize();
+
+	/**
+	 * Puts image data right into cache without intermediate file
+	 *
+	 * @param length
+	 *            Length of image data, it must not exceed {@link #getMaxPackedFileSize()}
+	 */
+	void put(String key, byte[] data, int length) throws IOException;
+}
@@ -0,0 +1,25 @@
+package com.nostra13.universalimageloader.cache.disc;
+
+import java.io.File;
+
+import com.nostra13.universalimageloader.core.download.CacheValidators;
+
+/**
+ * Interface for disc cache which keeps expired images and lets them be revalidated: expired image is still returned by
+ * {@link #get(String)} while it's re-checked on server by conditional request with image's {@linkplain CacheValidators
+ * validators}.
+ */
+public interface RevalidatingDiscCacheAware extends DiscCacheAware {
+
+	/** Puts image into cache with its validators */
+	void put(String key, File file, CacheValidators validators);
+
+	/** Returns true if image is cached and it's expired (so it should be revalidated) */
+	boolean isExpired(String key);
+
+	/** Returns validators of cached image (empty validators if image hasn't them) */
+	CacheValidators getValidators(String key);
+
+	/** Renews age of cached image (image wasn't changed on server) */
+	void renew(String key);
+}
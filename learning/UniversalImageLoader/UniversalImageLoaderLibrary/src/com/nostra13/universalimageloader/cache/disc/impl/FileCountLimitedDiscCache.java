@@ -42,7 +42,7 @@ public class FileCountLimitedDiscCache extends LimitedDiscCache {
 	}
 
 	@Override
-	protected int getSize(File file) {
+	protected long getSize(File file) {
 		return 1;
 	}
 }
@@ -1,23 +1,38 @@
 package com.nostra13.universalimageloader.cache.disc.impl;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
 import com.nostra13.universalimageloader.cache.disc.BaseDiscCache;
+import com.nostra13.universalimageloader.cache.disc.RevalidatingDiscCacheAware;
 import com.nostra13.universalimageloader.cache.disc.naming.FileNameGenerator;
 import com.nostra13.universalimageloader.core.DefaultConfigurationFactory;
+import com.nostra13.universalimageloader.core.download.CacheValidators;
 
 /**
- * Cache which deletes files which were loaded more than defined time. Cache size is unlimited.
+ * Cache which limits age of files. Cache size is unlimited.<br />
+ * Expired file isn't deleted, it's still returned by {@link #get(String)} and
+ * {@link com.nostra13.universalimageloader.core.ImageLoader ImageLoader} revalidates it in background: image is
+ * re-checked on server by conditional request with validators ("ETag" and "Last-Modified" headers) which were kept
+ * with file. If image wasn't changed then only file age is {@linkplain #renew(String) renewed}, otherwise new image
+ * replaces file.
  * 
  * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
  * @see BaseDiscCache
  */
-public class LimitedAgeDiscCache extends BaseDiscCache {
+public class LimitedAgeDiscCache extends BaseDiscCache implements RevalidatingDiscCacheAware {
+
+	private static final String VALIDATORS_DIR_NAME = ".validators";
 
 	private final long maxFileAge;
+	private final File validatorsDir;
 
 	private final Map<File, Long> loadingDates = Collections.synchronizedMap(new HashMap<File, Long>());
 
@@ -25,8 +40,8 @@ public class LimitedAgeDiscCache extends BaseDiscCache {
 	 * @param cacheDir
 	 *            Directory for file caching
 	 * @param maxAge
-	 *            Max file age (in seconds). If file age will exceed this value then it'll be removed on next treatment
-	 *            (and therefore be reloaded).
+	 *            Max file age (in seconds). If file age will exceed this value then it'll be revalidated on next
+	 *            treatment.
 	 */
 	public LimitedAgeDiscCache(File cacheDir, long maxAge) {
 		this(cacheDir, DefaultConfigurationFactory.createFileNameGenerator(), maxAge);
@@ -38,42 +53,127 @@ public class LimitedAgeDiscCache extends BaseDiscCache {
 	 * @param fileNameGenerator
 	 *            Name generator for cached files
 	 * @param maxAge
-	 *            Max file age (in seconds). If file age will exceed this value then it'll be removed on next treatment
-	 *            (and therefore be reloaded).
+	 *            Max file age (in seconds). If file age will exceed this value then it'll be revalidated on next
+	 *            treatment.
 	 */
 	public LimitedAgeDiscCache(File cacheDir, FileNameGenerator fileNameGenerator, long maxAge) {
 		super(cacheDir, fileNameGenerator);
 		this.maxFileAge = maxAge * 1000; // to milliseconds
+		this.validatorsDir = new File(cacheDir, VALIDATORS_DIR_NAME);
 		readLoadingDates();
 	}
 
 	private void readLoadingDates() {
-		File[] cachedFiles = getCacheDir().listFiles();
-		for (File cachedFile : cachedFiles) {
+		for (File cachedFile : listCachedFiles()) {
 			loadingDates.put(cachedFile, cachedFile.lastModified());
 		}
 	}
 
 	@Override
 	public void put(String key, File file) {
+		put(key, file, null);
+	}
+
+	@Override
+	public void put(String key, File file, CacheValidators validators) {
+		File validatorsFile = getValidatorsFile(file);
+		if (validators == null || validators.isEmpty()) {
+			validatorsFile.delete();
+		} else {
+			writeValidators(validatorsFile, validators);
+		}
+		renew(file);
+	}
+
+	@Override
+	public boolean isExpired(String key) {
+		Long loadingDate = loadingDates.get(super.get(key));
+		return loadingDate != null && System.currentTimeMillis() - loadingDate > maxFileAge;
+	}
+
+	@Override
+	public CacheValidators getValidators(String key) {
+		File validatorsFile = getValidatorsFile(super.get(key));
+		CacheValidators validators = new CacheValidators();
+		if (validatorsFile.exists()) {
+			readValidators(validatorsFile, validators);
+		}
+		return validators;
+	}
+
+	@Override
+	public void renew(String key) {
+		File file = super.get(key);
+		if (file.exists()) {
+			renew(file);
+		}
+	}
+
+	private void renew(File file) {
 		long currentTime = System.currentTimeMillis();
 		file.setLastModified(currentTime);
 		loadingDates.put(file, currentTime);
 	}
 
 	@Override
-	public File get(String key) {
-		File file = super.get(key);
-		if (file.exists()) {
-			Long loadingDate = loadingDates.get(file);
-			if (loadingDate == null) {
-				loadingDate = file.lastModified();
+	public void clear() {
+		super.clear();
+		loadingDates.clear();
+		File[] subdirs = validatorsDir.listFiles();
+		if (subdirs != null) {
+			for (File subdir : subdirs) {
+				File[] validatorsFiles = subdir.listFiles();
+				if (validatorsFiles != null) {
+					for (File validatorsFile : validatorsFiles) {
+						validatorsFile.delete();
+					}
+				}
 			}
-			if (System.currentTimeMillis() - loadingDate > maxFileAge) {
-				file.delete();
-				loadingDates.remove(file);
+		}
+	}
+
+	/** Returns file of validators of cached file (it has the same subdirectory and name in validators directory) */
+	private File getValidatorsFile(File file) {
+		return new File(new File(validatorsDir, file.getParentFile().getName()), file.getName());
+	}
+
+	private void writeValidators(File validatorsFile, CacheValidators validators) {
+		validatorsFile.getParentFile().mkdirs();
+		try {
+			DataOutputStream out = new DataOutputStream(new FileOutputStream(validatorsFile));
+			try {
+				writeNullableString(out, validators.getETag());
+				writeNullableString(out, validators.getLastModified());
+			} finally {
+				out.close();
 			}
+		} catch (IOException e) {
+			validatorsFile.delete(); // Image will be revalidated unconditionally
 		}
-		return file;
 	}
-}
\ No newline at end of file
+
+	private void readValidators(File validatorsFile, CacheValidators validators) {
+		try {
+			DataInputStream in = new DataInputStream(new FileInputStream(validatorsFile));
+			try {
+				validators.setETag(readNullableString(in));
+				validators.setLastModified(readNullableString(in));
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			// Broken validators are ignored, image will be revalidated unconditionally
+			validators.setETag(null);
+			validators.setLastModified(null);
+		}
+	}
+
+	private static void writeNullableString(DataOutputStream out, String s) throws IOException {
+		out.writeBoolean(s != null);
+		if (s != null) out.writeUTF(s);
+	}
+
+	private static String readNullableString(DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+}
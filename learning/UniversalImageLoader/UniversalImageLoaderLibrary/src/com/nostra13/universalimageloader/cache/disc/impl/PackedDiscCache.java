@@ -0,0 +1,644 @@
+package com.nostra13.universalimageloader.cache.disc.impl;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import com.nostra13.universalimageloader.cache.disc.BaseDiscCache;
+import com.nostra13.universalimageloader.cache.disc.PackedDiscCacheAware;
+import com.nostra13.universalimageloader.cache.disc.naming.FileNameGenerator;
+import com.nostra13.universalimageloader.core.DefaultConfigurationFactory;
+import com.nostra13.universalimageloader.utils.L;
+
+/**
+ * Disc cache which packs small images into large segment files. Small image doesn't occupy separate file (file system
+ * block, inode and directory entry) and it's read by one positional read from opened segment file. Images larger than
+ * {@linkplain #DEFAULT_MAX_PACKED_FILE_SIZE limit} are kept in separate files as in other disc caches.<br />
+ * Cache is limited by total size of cached images. If cache exceeds limit then the least recently used images are
+ * deleted. Deleted images leave dead space in segments. Segment with too much dead space is compacted on background
+ * thread: its live images are moved into the newest segment and segment file is deleted.<br />
+ * Small image can be {@linkplain #put(String, byte[], int) put} right into segment without intermediate file. Packed
+ * images are read out of cache lock, segment which is being read isn't closed until all its reads are finished.<br />
+ * Segment consists of records: <b>[key length][key][image length][image]</b>. Record with image length -1 marks
+ * deleted image. Index of packed images is kept in memory and it's restored by reading of segments on cache creation.
+ * Key of packed image is checked on every access, so image isn't confused with image of other key which has the same
+ * file name.<br />
+ * Cached images must be checked and read through {@link PackedDiscCacheAware} interface.
+ *
+ * @see BaseDiscCache
+ */
+public class PackedDiscCache extends BaseDiscCache implements PackedDiscCacheAware {
+
+	/** Images of this size (in bytes) and smaller are packed into segments by default */
+	public static final int DEFAULT_MAX_PACKED_FILE_SIZE = 32 * 1024; // 32 Kb
+
+	private static final String SEGMENTS_DIR_NAME = ".packs";
+	private static final String SEGMENT_FILE_EXTENSION = ".pack";
+	private static final long MAX_SEGMENT_SIZE = 4 * 1024 * 1024; // 4 Mb
+	private static final int MAX_KEY_LENGTH = 64 * 1024;
+	private static final int DELETED_RECORD_LENGTH = -1;
+	private static final int BUFFER_SIZE = 8 * 1024; // 8 Kb
+	private static final String COMPACTION_THREAD_NAME = "uil-packed-disc-cache-compaction";
+
+	private final File segmentsDir;
+	private final long maxCacheSize;
+	private final int maxPackedFileSize;
+
+	/** Segments by their numbers, the last one is active (new records are appended to it) */
+	private final TreeMap<Integer, Segment> segments = new TreeMap<Integer, Segment>();
+	/** Index of cached images by file names in access order (the least recently used first) */
+	private final Map<String, Entry> index = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+	private long cacheSize;
+	/** Number of the newest segment. Numbers aren't reused, so new segment never opens file of retired segment. */
+	private int lastSegmentNumber;
+
+	/** Compacts segments out of cache lock */
+	private final ExecutorService compactionExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, COMPACTION_THREAD_NAME);
+			t.setPriority(Thread.MIN_PRIORITY);
+			t.setDaemon(true);
+			return t;
+		}
+	});
+	private boolean compactionScheduled = false;
+
+	/**
+	 * @param cacheDir
+	 *            Directory for file caching. <b>Important:</b> Specify separate folder for cached files.
+	 * @param maxCacheSize
+	 *            Maximum total size of cached images (in bytes)
+	 */
+	public PackedDiscCache(File cacheDir, long maxCacheSize) {
+		this(cacheDir, DefaultConfigurationFactory.createFileNameGenerator(), maxCacheSize, DEFAULT_MAX_PACKED_FILE_SIZE);
+	}
+
+	/**
+	 * @param cacheDir
+	 *            Directory for file caching. <b>Important:</b> Specify separate folder for cached files.
+	 * @param fileNameGenerator
+	 *            Name generator for cached files
+	 * @param maxCacheSize
+	 *            Maximum total size of cached images (in bytes)
+	 * @param maxPackedFileSize
+	 *            Images of this size (in bytes) and smaller are packed into segments, larger images are kept in
+	 *            separate files
+	 */
+	public PackedDiscCache(File cacheDir, FileNameGenerator fileNameGenerator, long maxCacheSize, int maxPackedFileSize) {
+		super(cacheDir, fileNameGenerator);
+		this.segmentsDir = new File(cacheDir, SEGMENTS_DIR_NAME);
+		this.maxCacheSize = maxCacheSize;
+		this.maxPackedFileSize = maxPackedFileSize;
+		restoreIndex();
+	}
+
+	/**
+	 * Restores index from segments and separate files. Separate file replaces packed image of the same name (packed
+	 * image is marked as deleted then).
+	 */
+	private synchronized void restoreIndex() {
+		segmentsDir.mkdirs();
+		String[] segmentFileNames = segmentsDir.list();
+		if (segmentFileNames != null) {
+			Arrays.sort(segmentFileNames);
+			for (String segmentFileName : segmentFileNames) {
+				if (!segmentFileName.endsWith(SEGMENT_FILE_EXTENSION)) continue;
+				try {
+					int number = Integer.parseInt(segmentFileName.substring(0, segmentFileName.length() - SEGMENT_FILE_EXTENSION.length()));
+					Segment segment = new Segment(number, new File(segmentsDir, segmentFileName));
+					segments.put(number, segment);
+					lastSegmentNumber = number;
+					readSegment(segment);
+				} catch (NumberFormatException e) {
+					// Not a segment file
+				} catch (IOException e) {
+					L.e(e);
+				}
+			}
+		}
+
+		for (File file : listCachedFiles()) {
+			Entry packedEntry = removeFromIndex(file.getName());
+			if (packedEntry != null) {
+				deleteImage(packedEntry);
+			}
+			addToIndex(file.getName(), new Entry(file, file.length()));
+		}
+	}
+
+	/**
+	 * Reads records of segment into index. Sizes of deleted and overwritten images (and of deletion records) are
+	 * counted as dead space of segments which contain them. Broken tail of segment (e.g. after process killing) is cut
+	 * off.
+	 */
+	private void readSegment(Segment segment) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(segment.file), BUFFER_SIZE));
+		long position = 0;
+		try {
+			while (true) {
+				int keyLength = in.readInt();
+				if (keyLength <= 0 || keyLength > MAX_KEY_LENGTH) break;
+
+				byte[] keyBytes = new byte[keyLength];
+				in.readFully(keyBytes);
+				String key = new String(keyBytes, "UTF-8");
+				int length = in.readInt();
+				long dataOffset = position + 8 + keyLength;
+				String name = getFileName(key);
+				if (length == DELETED_RECORD_LENGTH) {
+					segment.deadSize += 8 + keyLength;
+					Entry deletedEntry = index.get(name);
+					if (deletedEntry != null && key.equals(deletedEntry.key)) {
+						removeFromIndex(name);
+						deletedEntry.segment.deadSize += deletedEntry.length;
+					}
+				} else {
+					if (length < 0 || dataOffset + length > segment.size) break;
+					if (in.skipBytes(length) != length) break;
+					Entry overwrittenEntry = removeFromIndex(name);
+					if (overwrittenEntry != null) {
+						overwrittenEntry.segment.deadSize += overwrittenEntry.length;
+					}
+					addToIndex(name, new Entry(segment, dataOffset, length, key));
+				}
+				position = dataOffset + Math.max(length, 0);
+			}
+		} catch (EOFException e) {
+			// End of segment
+		} finally {
+			in.close();
+		}
+
+		if (position < segment.size) {
+			segment.truncate(position);
+		}
+	}
+
+	@Override
+	public synchronized File get(String key) {
+		File file = super.get(key);
+		index.get(file.getName()); // moves image to the end of access order
+		return file;
+	}
+
+	@Override
+	public synchronized boolean contains(String key) {
+		File file = super.get(key);
+		Entry entry = index.get(file.getName());
+		return entry != null && entry.segment != null && key.equals(entry.key) || file.exists();
+	}
+
+	@Override
+	public InputStream openStream(String key) throws IOException {
+		File file = super.get(key);
+		Segment segment = null;
+		long offset = 0;
+		int length = 0;
+		synchronized (this) {
+			Entry entry = index.get(file.getName());
+			if (entry != null && entry.segment != null && key.equals(entry.key)) {
+				segment = entry.segment;
+				offset = entry.offset;
+				length = (int) entry.length;
+				segment.acquire();
+			}
+		}
+		if (segment != null) {
+			try {
+				return new ByteArrayInputStream(segment.read(offset, length));
+			} finally {
+				segment.release();
+			}
+		}
+		return file.exists() ? new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE) : null;
+	}
+
+	@Override
+	public void put(String key, File file) {
+		long length = file.length();
+		byte[] data = null;
+		if (length <= maxPackedFileSize) {
+			try {
+				data = readFile(file, (int) length);
+			} catch (IOException e) {
+				L.e(e);
+			}
+		}
+
+		synchronized (this) {
+			String name = file.getName();
+			Entry oldEntry = removeFromIndex(name); // image can be re-cached
+			if (oldEntry != null && oldEntry.segment != null) {
+				// Old packed image must be marked as deleted, otherwise it's restored after restart. Old separate file
+				// is the incoming file itself.
+				deleteImage(oldEntry);
+			}
+
+			if (data == null) {
+				addToIndex(name, new Entry(file, length));
+			} else {
+				try {
+					appendToSegment(name, key, data, data.length);
+					file.delete();
+				} catch (IOException e) {
+					L.e(e);
+					addToIndex(name, new Entry(file, length));
+				}
+			}
+			trimToSize();
+			scheduleCompactionIfNeed();
+		}
+	}
+
+	@Override
+	public int getMaxPackedFileSize() {
+		return maxPackedFileSize;
+	}
+
+	@Override
+	public synchronized void put(String key, byte[] data, int length) throws IOException {
+		String name = getFileName(key);
+		Entry oldEntry = removeFromIndex(name); // image can be re-cached
+		if (oldEntry != null) {
+			deleteImage(oldEntry);
+		}
+		appendToSegment(name, key, data, length);
+		trimToSize();
+		scheduleCompactionIfNeed();
+	}
+
+	private void appendToSegment(String name, String key, byte[] data, int length) throws IOException {
+		Segment segment = getSegmentForAppending(8 + key.length() + length);
+		long dataOffset = segment.append(key, data, length);
+		addToIndex(name, new Entry(segment, dataOffset, length, key));
+	}
+
+	@Override
+	public synchronized void remove(String key) {
+		File file = super.get(key);
+		Entry entry = index.get(file.getName());
+		if (entry != null && (entry.segment == null || key.equals(entry.key))) {
+			removeFromIndex(file.getName());
+			deleteImage(entry);
+		}
+		file.delete();
+	}
+
+	@Override
+	public synchronized void clear() {
+		for (Segment segment : segments.values()) {
+			segment.retire();
+		}
+		segments.clear();
+		for (Entry entry : index.values()) {
+			entry.removed = true;
+		}
+		index.clear();
+		cacheSize = 0;
+		super.clear();
+	}
+
+	/** Cache requires separate directory, so all files without extension in it are cached files */
+	@Override
+	protected boolean isCacheDirOwned() {
+		return true;
+	}
+
+	/** Adds file which was cached by previous version of library into index (as separate file) */
+	@Override
+	protected synchronized void onFileMigrated(File file) {
+		if (!index.containsKey(file.getName())) {
+			addToIndex(file.getName(), new Entry(file, file.length()));
+		}
+	}
+
+	/** Deletes the least recently used images until cache size doesn't exceed limit */
+	private void trimToSize() {
+		Iterator<Entry> it = index.values().iterator();
+		while (cacheSize > maxCacheSize && it.hasNext()) {
+			Entry entry = it.next();
+			it.remove();
+			entry.removed = true;
+			cacheSize -= entry.length;
+			deleteImage(entry);
+		}
+	}
+
+	/** Deletes image which was removed from index. Packed image is marked as deleted in segment. */
+	private void deleteImage(Entry entry) {
+		if (entry.segment == null) {
+			entry.file.delete();
+			return;
+		}
+		entry.segment.deadSize += entry.length;
+		try {
+			getSegmentForAppending(8 + entry.key.length()).appendDeletedRecord(entry.key);
+		} catch (IOException e) {
+			L.e(e);
+		}
+	}
+
+	/** Schedules compaction on background thread if there are segments which consist of dead space mostly */
+	private void scheduleCompactionIfNeed() {
+		if (compactionScheduled || findSparseSegment() == null) return;
+
+		compactionScheduled = true;
+		compactionExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				compactSegments();
+			}
+		});
+	}
+
+	/** Returns segment (not active one) which consists of dead space mostly or <b>null</b> if there is no such segment */
+	private Segment findSparseSegment() {
+		if (segments.size() < 2) return null;
+
+		Segment activeSegment = segments.get(segments.lastKey());
+		for (Segment segment : segments.values()) {
+			if (segment != activeSegment && segment.deadSize * 2 > segment.size) return segment;
+		}
+		return null;
+	}
+
+	/** Moves live images out of sparse segments. Such segments are deleted. Runs on background thread. */
+	private void compactSegments() {
+		while (true) {
+			Segment segment;
+			synchronized (this) {
+				segment = findSparseSegment();
+				if (segment == null) {
+					compactionScheduled = false;
+					return;
+				}
+				segment.acquire();
+			}
+			try {
+				compactSegment(segment);
+			} catch (IOException e) {
+				L.e(e);
+				synchronized (this) {
+					compactionScheduled = false;
+					return;
+				}
+			} finally {
+				segment.release();
+			}
+		}
+	}
+
+	/**
+	 * Moves live images of segment into the newest segment. Images are read out of lock, every image is moved under
+	 * lock only if it wasn't deleted or replaced meanwhile. Then segment is retired: its file is closed and deleted
+	 * when current reads of segment are finished.
+	 */
+	private void compactSegment(Segment segment) throws IOException {
+		List<Entry> liveEntries = new ArrayList<Entry>();
+		boolean isOldestSegment;
+		synchronized (this) {
+			if (segments.get(segment.number) != segment) return; // cache was cleared
+
+			isOldestSegment = segment.number == segments.firstKey();
+			for (Entry entry : index.values()) {
+				if (entry.segment == segment) {
+					liveEntries.add(entry);
+				}
+			}
+		}
+
+		for (Entry entry : liveEntries) {
+			// Only this thread moves images, so location of image can be read without lock
+			byte[] data = segment.read(entry.offset, (int) entry.length);
+			synchronized (this) {
+				if (entry.removed) continue;
+
+				Segment targetSegment = getSegmentForAppending(8 + entry.key.length() + data.length);
+				entry.offset = targetSegment.append(entry.key, data, data.length);
+				entry.segment = targetSegment;
+			}
+		}
+
+		List<String> deletedKeys = new ArrayList<String>();
+		if (!isOldestSegment) {
+			// Deletion records must be kept while older segments can contain deleted images
+			readDeletedKeys(segment, deletedKeys);
+		}
+		synchronized (this) {
+			for (String key : deletedKeys) {
+				if (!index.containsKey(getFileName(key))) {
+					getSegmentForAppending(8 + key.length()).appendDeletedRecord(key);
+				}
+			}
+			segments.remove(segment.number);
+			segment.retire();
+		}
+	}
+
+	private void readDeletedKeys(Segment segment, List<String> deletedKeys) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(segment.file), BUFFER_SIZE));
+		try {
+			while (true) {
+				int keyLength = in.readInt();
+				if (keyLength <= 0 || keyLength > MAX_KEY_LENGTH) break;
+
+				byte[] keyBytes = new byte[keyLength];
+				in.readFully(keyBytes);
+				int length = in.readInt();
+				if (length == DELETED_RECORD_LENGTH) {
+					deletedKeys.add(new String(keyBytes, "UTF-8"));
+				} else if (length < 0 || in.skipBytes(length) != length) {
+					break;
+				}
+			}
+		} catch (EOFException e) {
+			// End of segment
+		} finally {
+			in.close();
+		}
+	}
+
+	/** Returns active segment. New segment is started if active one can't hold record of incoming size. */
+	private Segment getSegmentForAppending(int recordSize) throws IOException {
+		Segment activeSegment = segments.isEmpty() ? null : segments.get(segments.lastKey());
+		if (activeSegment == null || activeSegment.size + recordSize > MAX_SEGMENT_SIZE && activeSegment.size > 0) {
+			int number = ++lastSegmentNumber;
+			segmentsDir.mkdirs();
+			activeSegment = new Segment(number, new File(segmentsDir, String.format("%08d", number) + SEGMENT_FILE_EXTENSION));
+			segments.put(number, activeSegment);
+		}
+		return activeSegment;
+	}
+
+	/** Returns name of cached file for incoming key */
+	private String getFileName(String key) {
+		return super.get(key).getName();
+	}
+
+	private void addToIndex(String name, Entry entry) {
+		Entry replacedEntry = index.put(name, entry);
+		cacheSize += entry.length;
+		if (replacedEntry != null) {
+			cacheSize -= replacedEntry.length;
+		}
+	}
+
+	private Entry removeFromIndex(String name) {
+		Entry entry = index.remove(name);
+		if (entry != null) {
+			entry.removed = true;
+			cacheSize -= entry.length;
+		}
+		return entry;
+	}
+
+	private static byte[] readFile(File file, int length) throws IOException {
+		byte[] data = new byte[length];
+		DataInputStream in = new DataInputStream(new FileInputStream(file));
+		try {
+			in.readFully(data);
+		} finally {
+			in.close();
+		}
+		return data;
+	}
+
+	/** Location of cached image */
+	private static class Entry {
+		/** Segment which contains image (<b>null</b> - if image is kept in separate file) */
+		Segment segment;
+		long offset;
+		/** Key of packed image */
+		final String key;
+		/** File which contains image if image isn't packed */
+		final File file;
+		final long length;
+		/** Whether image was removed from index (deleted or replaced) */
+		boolean removed;
+
+		Entry(Segment segment, long offset, long length, String key) {
+			this.segment = segment;
+			this.offset = offset;
+			this.key = key;
+			this.file = null;
+			this.length = length;
+		}
+
+		Entry(File file, long length) {
+			this.key = null;
+			this.file = file;
+			this.length = length;
+		}
+	}
+
+	/**
+	 * Segment file which is kept opened for positional reads and appends. Reads are counted, so retired segment is
+	 * closed and deleted when its last read is finished.
+	 */
+	private static class Segment {
+		final int number;
+		final File file;
+		private final RandomAccessFile randomAccessFile;
+		private final FileChannel channel;
+		long size;
+		/** Size of deleted images and deletion records */
+		long deadSize;
+		private int readCount;
+		private boolean retired;
+
+		Segment(int number, File file) throws IOException {
+			this.number = number;
+			this.file = file;
+			randomAccessFile = new RandomAccessFile(file, "rw");
+			channel = randomAccessFile.getChannel();
+			size = randomAccessFile.length();
+		}
+
+		byte[] read(long offset, int length) throws IOException {
+			ByteBuffer buffer = ByteBuffer.allocate(length);
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer, offset + buffer.position()) < 0) throw new EOFException();
+			}
+			return buffer.array();
+		}
+
+		/** Appends image record and returns offset of image data */
+		long append(String key, byte[] data, int length) throws IOException {
+			byte[] keyBytes = key.getBytes("UTF-8");
+			ByteBuffer buffer = ByteBuffer.allocate(8 + keyBytes.length + length);
+			buffer.putInt(keyBytes.length).put(keyBytes).putInt(length).put(data, 0, length);
+			write(buffer);
+			return size - length;
+		}
+
+		void appendDeletedRecord(String key) throws IOException {
+			byte[] keyBytes = key.getBytes("UTF-8");
+			ByteBuffer buffer = ByteBuffer.allocate(8 + keyBytes.length);
+			buffer.putInt(keyBytes.length).put(keyBytes).putInt(DELETED_RECORD_LENGTH);
+			write(buffer);
+			deadSize += buffer.capacity();
+		}
+
+		private void write(ByteBuffer buffer) throws IOException {
+			buffer.flip();
+			long position = size;
+			while (buffer.hasRemaining()) {
+				position += channel.write(buffer, position);
+			}
+			size = position;
+		}
+
+		void truncate(long newSize) throws IOException {
+			randomAccessFile.setLength(newSize);
+			size = newSize;
+		}
+
+		/** Marks start of read, segment won't be closed until read is {@linkplain #release() finished} */
+		synchronized void acquire() {
+			readCount++;
+		}
+
+		synchronized void release() {
+			readCount--;
+			if (retired && readCount == 0) {
+				delete();
+			}
+		}
+
+		/** Retires segment: it's deleted at once or when its last read is finished */
+		synchronized void retire() {
+			retired = true;
+			if (readCount == 0) {
+				delete();
+			}
+		}
+
+		private void delete() {
+			try {
+				randomAccessFile.close();
+			} catch (IOException e) {
+				// Do nothing
+			}
+			file.delete();
+		}
+	}
+}
@@ -17,7 +17,7 @@ import com.nostra13.universalimageloader.utils.L;
 public class TotalSizeLimitedDiscCache extends LimitedDiscCache {
 
 	private static final int MIN_NORMAL_CACHE_SIZE_IN_MB = 8;
-	private static final int MIN_NORMAL_CACHE_SIZE = MIN_NORMAL_CACHE_SIZE_IN_MB * 1024 * 1024;
+	private static final long MIN_NORMAL_CACHE_SIZE = MIN_NORMAL_CACHE_SIZE_IN_MB * 1024 * 1024;
 
 	/**
 	 * @param cacheDir
@@ -27,7 +27,7 @@ public class TotalSizeLimitedDiscCache extends LimitedDiscCache {
 	 *            Maximum cache directory size (in bytes). If cache size exceeds this limit then file with the most
 	 *            oldest last usage date will be deleted.
 	 */
-	public TotalSizeLimitedDiscCache(File cacheDir, int maxCacheSize) {
+	public TotalSizeLimitedDiscCache(File cacheDir, long maxCacheSize) {
 		this(cacheDir, DefaultConfigurationFactory.createFileNameGenerator(), maxCacheSize);
 	}
 
@@ -41,7 +41,7 @@ public class TotalSizeLimitedDiscCache extends LimitedDiscCache {
 	 *            Maximum cache directory size (in bytes). If cache size exceeds this limit then file with the most
 	 *            oldest last usage date will be deleted.
 	 */
-	public TotalSizeLimitedDiscCache(File cacheDir, FileNameGenerator fileNameGenerator, int maxCacheSize) {
+	public TotalSizeLimitedDiscCache(File cacheDir, FileNameGenerator fileNameGenerator, long maxCacheSize) {
 		super(cacheDir, fileNameGenerator, maxCacheSize);
 		if (maxCacheSize < MIN_NORMAL_CACHE_SIZE) {
 			L.w("You set too small disc cache size (less than %1$d Mb)", MIN_NORMAL_CACHE_SIZE_IN_MB);
@@ -49,7 +49,7 @@ public class TotalSizeLimitedDiscCache extends LimitedDiscCache {
 	}
 
 	@Override
-	protected int getSize(File file) {
-		return (int) file.length();
+	protected long getSize(File file) {
+		return file.length();
 	}
 }
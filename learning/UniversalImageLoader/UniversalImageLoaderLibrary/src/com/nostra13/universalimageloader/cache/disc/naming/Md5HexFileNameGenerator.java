@@ -0,0 +1,51 @@
+package com.nostra13.universalimageloader.cache.disc.naming;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import com.nostra13.universalimageloader.utils.L;
+
+/**
+ * Names image file as MD5 hash of image URI in hex form (32 chars). Unlike {@link HashCodeFileNameGenerator} names of
+ * different URIs practically never collide. Unlike {@link Md5FileNameGenerator} it doesn't create digest and big integer
+ * for every name: digest is reused by thread and hash is converted to hex by table.
+ */
+public class Md5HexFileNameGenerator implements FileNameGenerator {
+
+	private static final String HASH_ALGORITHM = "MD5";
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	private static final ThreadLocal<MessageDigest> DIGESTS = new ThreadLocal<MessageDigest>() {
+		@Override
+		protected MessageDigest initialValue() {
+			try {
+				return MessageDigest.getInstance(HASH_ALGORITHM);
+			} catch (NoSuchAlgorithmException e) {
+				L.e(e);
+				return null;
+			}
+		}
+	};
+
+	@Override
+	public String generate(String imageUri) {
+		byte[] md5 = getMD5(imageUri);
+		char[] name = new char[md5.length * 2];
+		for (int i = 0; i < md5.length; i++) {
+			name[i * 2] = HEX_DIGITS[(md5[i] >> 4) & 0xF];
+			name[i * 2 + 1] = HEX_DIGITS[md5[i] & 0xF];
+		}
+		return new String(name);
+	}
+
+	/** Returns MD5 hash of UTF-8 bytes of incoming string. Digest is reused by current thread. */
+	static byte[] getMD5(String s) {
+		MessageDigest digest = DIGESTS.get();
+		try {
+			return digest.digest(s.getBytes("UTF-8"));
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e.getMessage());
+		}
+	}
+}
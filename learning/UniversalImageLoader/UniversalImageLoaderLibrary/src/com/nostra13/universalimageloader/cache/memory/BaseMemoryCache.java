@@ -4,6 +4,7 @@ import java.lang.ref.Reference;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 
 /**
@@ -38,6 +39,18 @@ public abstract class BaseMemoryCache<K, V> implements MemoryCacheAware<K, V> {
 		softMap.remove(key);
 	}
 
+	/** Removes all references to value from cache */
+	protected void removeValue(V value) {
+		synchronized (softMap) {
+			Iterator<Reference<V>> it = softMap.values().iterator();
+			while (it.hasNext()) {
+				if (it.next().get() == value) {
+					it.remove();
+				}
+			}
+		}
+	}
+
 	@Override
 	public Collection<K> keys() {
 		return softMap.keySet();
@@ -0,0 +1,243 @@
+package com.nostra13.universalimageloader.cache.memory;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.widget.ImageView;
+
+/**
+ * Pool of unused mutable {@link Bitmap bitmaps} which can be reused for decoding of new images (as
+ * {@link BitmapFactory.Options#inBitmap}). Bitmaps are grouped by their dimensions and config. Size of all pooled
+ * bitmaps will not exceed size limit, the oldest pooled bitmap is recycled when pool reaches limit size.<br />
+ * Pool gets bitmaps which were {@linkplain EvictionListener#onEvicted(Object) evicted} from memory cache. Bitmaps which
+ * are displayed in {@link ImageView ImageViews} at this moment or were passed to user code are not accepted by pool.
+ * Bitmap which is evicted while it's being delivered (e.g. its display task is posted but isn't run yet) is pooled only
+ * after all its deliveries are finished.
+ */
+public class BitmapPool implements EvictionListener<Bitmap> {
+
+	private static final int MAX_SPARE_DELIVERIES = 16;
+
+	private final int sizeLimit;
+
+	private int poolSize = 0;
+
+	/** Pooled bitmaps grouped by dimensions and config */
+	private final Map<Long, LinkedList<Bitmap>> buckets = new HashMap<Long, LinkedList<Bitmap>>();
+	/** Pooled bitmaps in order of pooling (values are bucket keys) */
+	private final Map<Bitmap, Long> poolingOrder = new LinkedHashMap<Bitmap, Long>();
+
+	/** Bitmaps displayed in ImageViews at this moment */
+	private final Map<ImageView, Bitmap> displayedBitmaps = new WeakHashMap<ImageView, Bitmap>();
+	/**
+	 * Reverse index of {@link #displayedBitmaps}: ImageViews which display bitmap (or displayed it and were collected by
+	 * GC or were reused for another bitmap since then, such references are removed on check)
+	 */
+	private final Map<Bitmap, List<WeakReference<ImageView>>> displayingViews = new WeakHashMap<Bitmap, List<WeakReference<ImageView>>>();
+	/** Bitmaps which were passed to user code. They are never pooled. */
+	private final Map<Bitmap, Boolean> handedOutBitmaps = new WeakHashMap<Bitmap, Boolean>();
+	/** Bitmaps which are being delivered to ImageViews or user code */
+	private final Map<Bitmap, Delivery> deliveredBitmaps = new IdentityHashMap<Bitmap, Delivery>();
+	/** Finished deliveries which are reused for next delivered bitmaps */
+	private final List<Delivery> spareDeliveries = new ArrayList<Delivery>();
+
+	/**
+	 * @param sizeLimit
+	 *            Maximum size of all pooled bitmaps (in bytes)
+	 */
+	public BitmapPool(int sizeLimit) {
+		this.sizeLimit = sizeLimit;
+	}
+
+	/**
+	 * Puts bitmap into pool. Bitmap shouldn't be used by anybody after that.
+	 * 
+	 * @return <b>true</b> - if bitmap was pooled, <b>false</b> - if bitmap can't be reused (it's immutable, recycled,
+	 *         too large or is in use)
+	 */
+	public synchronized boolean put(Bitmap bitmap) {
+		if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable() || bitmap.getConfig() == null) return false;
+		if (poolingOrder.containsKey(bitmap) || isInUse(bitmap)) return false;
+
+		int bitmapSize = getSize(bitmap);
+		if (bitmapSize > sizeLimit) return false;
+
+		while (poolSize + bitmapSize > sizeLimit) {
+			removeOldest();
+		}
+
+		Long bucketKey = getBucketKey(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+		LinkedList<Bitmap> bucket = buckets.get(bucketKey);
+		if (bucket == null) {
+			bucket = new LinkedList<Bitmap>();
+			buckets.put(bucketKey, bucket);
+		}
+		bucket.addLast(bitmap);
+		poolingOrder.put(bitmap, bucketKey);
+		poolSize += bitmapSize;
+		return true;
+	}
+
+	/**
+	 * Takes bitmap of defined dimensions and config out of pool.
+	 * 
+	 * @return Bitmap which can be reused or <b>null</b> if pool has no appropriate bitmap
+	 */
+	public synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+		LinkedList<Bitmap> bucket = buckets.get(getBucketKey(width, height, config));
+		if (bucket == null || bucket.isEmpty()) return null;
+
+		Bitmap bitmap = bucket.removeLast();
+		poolingOrder.remove(bitmap);
+		poolSize -= getSize(bitmap);
+		return bitmap;
+	}
+
+	@Override
+	public synchronized void onEvicted(Bitmap value) {
+		Delivery delivery = deliveredBitmaps.get(value);
+		if (delivery != null) {
+			delivery.evicted = true;
+		} else {
+			put(value);
+		}
+	}
+
+	/**
+	 * Remembers that bitmap is being delivered (e.g. it's taken from memory cache or display task is posted for it), so
+	 * it won't be pooled until delivery is {@linkplain #onDeliveryFinished(Bitmap) finished}.
+	 * 
+	 * @return <b>true</b> - if delivery was started, <b>false</b> - if bitmap is pooled or recycled already and can't be
+	 *         delivered
+	 */
+	public synchronized boolean onDeliveryStarted(Bitmap bitmap) {
+		if (bitmap.isRecycled() || poolingOrder.containsKey(bitmap)) return false;
+
+		Delivery delivery = deliveredBitmaps.get(bitmap);
+		if (delivery == null) {
+			int spareCount = spareDeliveries.size();
+			delivery = spareCount > 0 ? spareDeliveries.remove(spareCount - 1) : new Delivery();
+			deliveredBitmaps.put(bitmap, delivery);
+		}
+		delivery.count++;
+		return true;
+	}
+
+	/** Finishes delivery of bitmap. Bitmap is pooled if it was evicted during delivery and isn't in use now. */
+	public synchronized void onDeliveryFinished(Bitmap bitmap) {
+		Delivery delivery = deliveredBitmaps.get(bitmap);
+		if (delivery == null || --delivery.count > 0) return;
+
+		deliveredBitmaps.remove(bitmap);
+		boolean evicted = delivery.evicted;
+		delivery.evicted = false;
+		if (spareDeliveries.size() < MAX_SPARE_DELIVERIES) {
+			spareDeliveries.add(delivery);
+		}
+		if (evicted) {
+			put(bitmap);
+		}
+	}
+
+	/** Remembers bitmap which is displayed in ImageView (<b>null</b> - if ImageView doesn't display pooled bitmap) */
+	public synchronized void onBitmapDisplayed(ImageView imageView, Bitmap bitmap) {
+		Bitmap previousBitmap = bitmap == null ? displayedBitmaps.remove(imageView) : displayedBitmaps.put(imageView, bitmap);
+		if (previousBitmap == bitmap) return;
+
+		if (previousBitmap != null) {
+			List<WeakReference<ImageView>> views = displayingViews.get(previousBitmap);
+			if (views != null) {
+				for (Iterator<WeakReference<ImageView>> it = views.iterator(); it.hasNext();) {
+					if (it.next().get() == imageView) {
+						it.remove();
+						break;
+					}
+				}
+				if (views.isEmpty()) {
+					displayingViews.remove(previousBitmap);
+				}
+			}
+		}
+		if (bitmap != null) {
+			List<WeakReference<ImageView>> views = displayingViews.get(bitmap);
+			if (views == null) {
+				views = new ArrayList<WeakReference<ImageView>>(1);
+				displayingViews.put(bitmap, views);
+			}
+			views.add(new WeakReference<ImageView>(imageView));
+		}
+	}
+
+	/** Remembers bitmap which was passed to user code, so it won't be ever pooled */
+	public synchronized void onBitmapHandedOut(Bitmap bitmap) {
+		handedOutBitmaps.put(bitmap, Boolean.TRUE);
+	}
+
+	/** Recycles all pooled bitmaps */
+	public synchronized void clear() {
+		for (Bitmap bitmap : poolingOrder.keySet()) {
+			bitmap.recycle();
+		}
+		buckets.clear();
+		poolingOrder.clear();
+		poolSize = 0;
+	}
+
+	public int getSizeLimit() {
+		return sizeLimit;
+	}
+
+	private boolean isInUse(Bitmap bitmap) {
+		return deliveredBitmaps.containsKey(bitmap) || handedOutBitmaps.containsKey(bitmap) || isDisplayed(bitmap);
+	}
+
+	/** Checks ImageViews which displayed bitmap lately, removes references to ImageViews which don't display it anymore */
+	private boolean isDisplayed(Bitmap bitmap) {
+		List<WeakReference<ImageView>> views = displayingViews.get(bitmap);
+		if (views == null) return false;
+
+		for (Iterator<WeakReference<ImageView>> it = views.iterator(); it.hasNext();) {
+			ImageView imageView = it.next().get();
+			if (imageView != null && displayedBitmaps.get(imageView) == bitmap) return true;
+			it.remove();
+		}
+		displayingViews.remove(bitmap);
+		return false;
+	}
+
+	private void removeOldest() {
+		Iterator<Map.Entry<Bitmap, Long>> it = poolingOrder.entrySet().iterator();
+		Map.Entry<Bitmap, Long> oldest = it.next();
+		it.remove();
+
+		Bitmap bitmap = oldest.getKey();
+		buckets.get(oldest.getValue()).remove(bitmap);
+		poolSize -= getSize(bitmap);
+		bitmap.recycle();
+	}
+
+	private int getSize(Bitmap bitmap) {
+		return bitmap.getRowBytes() * bitmap.getHeight();
+	}
+
+	private Long getBucketKey(int width, int height, Bitmap.Config config) {
+		return ((long) width << 34) | ((long) height << 4) | config.ordinal();
+	}
+
+	/** Unfinished deliveries of bitmap */
+	private static class Delivery {
+		int count;
+		/** Bitmap was evicted from memory cache during delivery, so it should be pooled when delivery is finished */
+		boolean evicted;
+	}
+}
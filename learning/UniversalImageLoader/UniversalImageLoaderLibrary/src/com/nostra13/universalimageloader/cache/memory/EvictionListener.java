@@ -0,0 +1,13 @@
+package com.nostra13.universalimageloader.cache.memory;
+
+/**
+ * Listener for values which are evicted from {@linkplain LimitedMemoryCache limited memory cache} because cache size
+ * exceeds limit.
+ * 
+ * @see LimitedMemoryCache#setEvictionListener(EvictionListener)
+ */
+public interface EvictionListener<V> {
+
+	/** Is called when value was evicted from cache. Value isn't available from cache anymore. */
+	void onEvicted(V value);
+}
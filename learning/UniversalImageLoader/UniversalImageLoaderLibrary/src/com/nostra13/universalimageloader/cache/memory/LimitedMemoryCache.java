@@ -1,8 +1,10 @@
 package com.nostra13.universalimageloader.cache.memory;
 
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.LinkedList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import com.nostra13.universalimageloader.utils.L;
 
@@ -23,11 +25,13 @@ public abstract class LimitedMemoryCache<K, V> extends BaseMemoryCache<K, V> {
 	private int cacheSize = 0;
 
 	/**
-	 * Contains strong references to stored objects. Each next object is added last. If hard cache size will exceed
-	 * limit then first object is deleted (but it continue exist at {@link #softMap} and can be collected by GC at any
-	 * time)
+	 * Contains strong references to stored objects (with keys of their storings). If hard cache size will exceed limit
+	 * then object chosen by {@link #removeNext()} is deleted (but it continue exist at {@link #softMap} and can be
+	 * collected by GC at any time). Keys of storings are kept so evicted object can be removed from cache by keys.
 	 */
-	private final List<V> hardCache = Collections.synchronizedList(new LinkedList<V>());
+	private final Map<V, List<K>> hardCache = Collections.synchronizedMap(new HashMap<V, List<K>>());
+
+	private volatile EvictionListener<V> evictionListener;
 
 	/**
 	 * @param sizeLimit
@@ -49,11 +53,14 @@ public abstract class LimitedMemoryCache<K, V> extends BaseMemoryCache<K, V> {
 		if (valueSize < sizeLimit) {
 			while (cacheSize + valueSize > sizeLimit) {
 				V removedValue = removeNext();
-				if (hardCache.remove(removedValue)) {
+				if (removedValue == null) break;
+				K removedKey = removeFromHardCache(removedValue);
+				if (removedKey != null) {
 					cacheSize -= getSize(removedValue);
+					onEvicted(removedKey, removedValue);
 				}
 			}
-			hardCache.add(value);
+			addToHardCache(key, value);
 			cacheSize += valueSize;
 
 			putSuccessfully = true;
@@ -67,7 +74,7 @@ public abstract class LimitedMemoryCache<K, V> extends BaseMemoryCache<K, V> {
 	public void remove(K key) {
 		V value = super.get(key);
 		if (value != null) {
-			if (hardCache.remove(value)) {
+			if (removeFromHardCache(key, value)) {
 				cacheSize -= getSize(value);
 			}
 		}
@@ -81,6 +88,72 @@ public abstract class LimitedMemoryCache<K, V> extends BaseMemoryCache<K, V> {
 		super.clear();
 	}
 
+	private void addToHardCache(K key, V value) {
+		synchronized (hardCache) {
+			List<K> keys = hardCache.get(value);
+			if (keys == null) {
+				keys = new ArrayList<K>(1);
+				hardCache.put(value, keys);
+			}
+			keys.add(key);
+		}
+	}
+
+	/**
+	 * Removes the oldest storing of value from hard cache
+	 * 
+	 * @return Key of removed storing or <b>null</b> if value isn't contained in hard cache
+	 */
+	private K removeFromHardCache(V value) {
+		synchronized (hardCache) {
+			List<K> keys = hardCache.get(value);
+			if (keys == null) return null;
+
+			K key = keys.remove(0);
+			if (keys.isEmpty()) {
+				hardCache.remove(value);
+			}
+			return key;
+		}
+	}
+
+	/** Removes storing of value by key from hard cache, returns <b>false</b> if there is no such storing */
+	private boolean removeFromHardCache(K key, V value) {
+		synchronized (hardCache) {
+			List<K> keys = hardCache.get(value);
+			if (keys == null || !keys.remove(key)) return false;
+
+			if (keys.isEmpty()) {
+				hardCache.remove(value);
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Sets listener for values evicted from cache because of size limit. If listener is set then evicted value is
+	 * removed from cache completely (otherwise it continue exist at {@link #softMap} until GC collects it).
+	 */
+	public void setEvictionListener(EvictionListener<V> evictionListener) {
+		this.evictionListener = evictionListener;
+	}
+
+	/** Removes evicted value from cache by keys of its storings (if eviction listener is set) and notifies listener */
+	private void onEvicted(K key, V value) {
+		EvictionListener<V> listener = evictionListener;
+		if (listener != null) {
+			super.remove(key);
+			List<K> otherKeys = hardCache.remove(value);
+			if (otherKeys != null) {
+				for (K otherKey : otherKeys) {
+					super.remove(otherKey);
+					cacheSize -= getSize(value);
+				}
+			}
+			listener.onEvicted(value);
+		}
+	}
+
 	protected int getSizeLimit() {
 		return sizeLimit;
 	}
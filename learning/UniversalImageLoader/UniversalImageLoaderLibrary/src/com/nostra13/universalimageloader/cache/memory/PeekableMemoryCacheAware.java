@@ -0,0 +1,12 @@
+package com.nostra13.universalimageloader.cache.memory;
+
+/**
+ * Interface for memory cache which tracks usage of its values (e.g. for eviction). Such cache counts every
+ * {@link #get(Object)} as a request of value, so repeated checks of cache within the same request should be done by
+ * {@link #peek(Object)}.
+ */
+public interface PeekableMemoryCacheAware<K, V> extends MemoryCacheAware<K, V> {
+
+	/** Returns value by key (or null if there is no value) without counting it as a request of value */
+	V peek(K key);
+}
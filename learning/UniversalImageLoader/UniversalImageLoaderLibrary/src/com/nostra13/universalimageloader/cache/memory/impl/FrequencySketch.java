@@ -0,0 +1,99 @@
+package com.nostra13.universalimageloader.cache.memory.impl;
+
+/**
+ * Compact probabilistic counter of key usage frequency (count-min sketch with 4-bit counters). Each key is counted in 4
+ * counters chosen by different hash functions, frequency of key is minimum of these counters. All counters are halved
+ * periodically so old popularity fades out.<br />
+ * Isn't thread-safe.
+ */
+final class FrequencySketch {
+
+	private static final int[] SEEDS = { 0x97cb3127, 0xc3a5c85c, 0xb492b66f, 0x9ae16a3b };
+	private static final long RESET_MASK = 0x7777777777777777L;
+	private static final int MAX_FREQUENCY = 15;
+	private static final int MIN_TABLE_SIZE = 16;
+	private static final int MAX_TABLE_SIZE = 1 << 16;
+
+	/** Each long contains 16 counters, 4 counters for each hash function */
+	private final long[] table;
+	private final int tableMask;
+	private final int sampleSize;
+
+	private int additions = 0;
+
+	/**
+	 * @param expectedSize
+	 *            Expected count of keys in cache
+	 */
+	FrequencySketch(int expectedSize) {
+		int tableSize = MIN_TABLE_SIZE;
+		while (tableSize < expectedSize && tableSize < MAX_TABLE_SIZE) {
+			tableSize <<= 1;
+		}
+		table = new long[tableSize];
+		tableMask = tableSize - 1;
+		sampleSize = 10 * tableSize;
+	}
+
+	/** Returns estimated count of key usages (0 - 15) */
+	int frequency(Object key) {
+		int hash = spread(key.hashCode());
+		int frequency = MAX_FREQUENCY;
+		for (int i = 0; i < SEEDS.length; i++) {
+			long counters = table[indexOf(hash, i)];
+			frequency = Math.min(frequency, (int) ((counters >>> counterShift(hash, i)) & 0xF));
+		}
+		return frequency;
+	}
+
+	/**
+	 * Counts key usage
+	 * 
+	 * @return true - if counters were halved after this usage (so usage counts which are kept along with sketch should
+	 *         be aged too)
+	 */
+	boolean increment(Object key) {
+		int hash = spread(key.hashCode());
+		boolean incremented = false;
+		for (int i = 0; i < SEEDS.length; i++) {
+			int index = indexOf(hash, i);
+			int shift = counterShift(hash, i);
+			if (((table[index] >>> shift) & 0xF) < MAX_FREQUENCY) {
+				table[index] += 1L << shift;
+				incremented = true;
+			}
+		}
+		if (incremented && ++additions == sampleSize) {
+			reset();
+			return true;
+		}
+		return false;
+	}
+
+	/** Halves all counters */
+	private void reset() {
+		for (int i = 0; i < table.length; i++) {
+			table[i] = (table[i] >>> 1) & RESET_MASK;
+		}
+		additions /= 2;
+	}
+
+	private int indexOf(int hash, int i) {
+		int h = hash * SEEDS[i];
+		h ^= h >>> 16;
+		return h & tableMask;
+	}
+
+	/** Each hash function uses its own 4 counters of long (one of them is chosen by hash) */
+	private int counterShift(int hash, int i) {
+		int counter = (i << 2) + ((hash >>> (i << 3)) & 3);
+		return counter << 2;
+	}
+
+	private int spread(int hash) {
+		hash ^= hash >>> 17;
+		hash *= 0xed5ad4bb;
+		hash ^= hash >>> 11;
+		return hash;
+	}
+}
@@ -10,6 +10,7 @@ import com.nostra13.universalimageloader.cache.memory.MemoryCacheAware;
  * Decorator for {@link MemoryCacheAware}. Provides special feature for cache: some different keys are considered as
  * equals (using {@link Comparator comparator}). And when you try to put some value into cache by key so entries with
  * "equals" keys will be removed from cache before.<br />
+ * Every put scans all keys of cache, use {@link UriIndexedMemoryCache} for cache keys generated by ImageLoader.<br />
  * <b>NOTE:</b> Used for internal needs. Normally you don't need to use this class.
  * 
  * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
@@ -0,0 +1,334 @@
+package com.nostra13.universalimageloader.cache.memory.impl;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import android.graphics.Bitmap;
+
+import com.nostra13.universalimageloader.cache.memory.EvictionListener;
+import com.nostra13.universalimageloader.cache.memory.PeekableMemoryCacheAware;
+
+/**
+ * Limited {@link Bitmap bitmap} cache which keeps strong references to bitmaps. Size of all stored bitmaps will not to
+ * exceed size limit. When cache reaches limit size then the bitmap which used the least frequently is deleted from
+ * cache (the oldest one among bitmaps with equal usage count).<br />
+ * Bitmaps are grouped by usage count so all operations take constant time (unlike {@link UsingFreqLimitedMemoryCache}
+ * which scans all bitmaps on eviction).<br />
+ * New bitmap is admitted into full cache only if its key wasn't requested less often recently than keys of bitmaps which
+ * should be evicted for it. Request frequencies (including requests of bitmaps which aren't in cache) are estimated by
+ * compact {@linkplain FrequencySketch sketch}. So a burst of images which are shown once (e.g. during fast list
+ * fling) can't flush frequently shown images out of cache. Usage counts of cached bitmaps are halved along with the
+ * sketch, so bitmap which was popular once can be evicted later.<br />
+ * Every {@link #get(String)} is counted as a request, use {@link #peek(String)} for repeated checks of cache within the
+ * same request. {@link #put(String, Bitmap)} isn't counted as a request.
+ */
+public class LFUMemoryCache implements PeekableMemoryCacheAware<String, Bitmap> {
+
+	/** Assumed average size of cached bitmap, it's used to compute size of frequency sketch */
+	private static final int AVERAGE_BITMAP_SIZE = 16 * 1024; // 16 Kb
+
+	private final int sizeLimit;
+
+	/** All fields below are guarded by this cache instance */
+	private final Map<String, CacheEntry> entries = new HashMap<String, CacheEntry>();
+	/** Bucket with the lowest usage count (buckets are linked by increasing usage count) */
+	private FrequencyBucket lowestBucket;
+	/** Removed empty bucket which is reused for new usage count, so usage counting doesn't allocate buckets often */
+	private FrequencyBucket spareBucket;
+	private final FrequencySketch sketch;
+	private int size = 0;
+
+	private volatile EvictionListener<Bitmap> evictionListener;
+
+	/**
+	 * @param sizeLimit
+	 *            Maximum size for cache (in bytes)
+	 */
+	public LFUMemoryCache(int sizeLimit) {
+		if (sizeLimit <= 0) throw new IllegalArgumentException("sizeLimit must be a positive number");
+		this.sizeLimit = sizeLimit;
+		sketch = new FrequencySketch(sizeLimit / AVERAGE_BITMAP_SIZE);
+	}
+
+	@Override
+	public boolean put(String key, Bitmap value) {
+		if (key == null || value == null) throw new NullPointerException("key == null || value == null");
+
+		int valueSize = getSize(value);
+		if (valueSize >= sizeLimit) return false;
+
+		synchronized (this) {
+			CacheEntry entry = entries.get(key);
+			if (entry != null) {
+				// Replace value, usage count is kept
+				size += valueSize - entry.size;
+				entry.value = value;
+				entry.size = valueSize;
+				evict(sizeLimit, entry);
+				return true;
+			}
+
+			if (size + valueSize > sizeLimit && !admit(key, size + valueSize - sizeLimit)) {
+				return false;
+			}
+
+			entry = new CacheEntry(key, value, valueSize);
+			entries.put(key, entry);
+			size += valueSize;
+			addToBucket(entry, getBucket(null, 1));
+			evict(sizeLimit, entry);
+		}
+		return true;
+	}
+
+	@Override
+	public synchronized Bitmap get(String key) {
+		if (sketch.increment(key)) {
+			ageUsageCounts();
+		}
+		CacheEntry entry = entries.get(key);
+		if (entry == null) return null;
+
+		increaseUsageCount(entry);
+		return entry.value;
+	}
+
+	@Override
+	public synchronized Bitmap peek(String key) {
+		CacheEntry entry = entries.get(key);
+		return entry == null ? null : entry.value;
+	}
+
+	@Override
+	public synchronized void remove(String key) {
+		CacheEntry entry = entries.remove(key);
+		if (entry != null) {
+			removeFromBucket(entry);
+			size -= entry.size;
+		}
+	}
+
+	@Override
+	public synchronized Collection<String> keys() {
+		return new HashSet<String>(entries.keySet());
+	}
+
+	@Override
+	public synchronized void clear() {
+		entries.clear();
+		lowestBucket = null;
+		spareBucket = null;
+		size = 0;
+	}
+
+	/** Returns size of all stored bitmaps (in bytes) */
+	public synchronized int getSize() {
+		return size;
+	}
+
+	public int getSizeLimit() {
+		return sizeLimit;
+	}
+
+	/**
+	 * Sets listener for bitmaps evicted from cache because of size limit (e.g.
+	 * {@link com.nostra13.universalimageloader.cache.memory.BitmapPool BitmapPool})
+	 */
+	public void setEvictionListener(EvictionListener<Bitmap> evictionListener) {
+		this.evictionListener = evictionListener;
+	}
+
+	/**
+	 * Decides whether new key should be admitted into cache. Key is admitted if it isn't requested less often than any
+	 * key which would be evicted for it. Ties are admitted, so new images replace images which were used as rarely.
+	 * 
+	 * @param neededSpace
+	 *            Size of bitmaps (in bytes) which should be evicted for new bitmap
+	 */
+	private boolean admit(String candidateKey, int neededSpace) {
+		int candidateFrequency = sketch.frequency(candidateKey);
+		int freedSpace = 0;
+		for (FrequencyBucket bucket = lowestBucket; bucket != null; bucket = bucket.next) {
+			for (CacheEntry victim = bucket.oldest; victim != null; victim = victim.newer) {
+				if (sketch.frequency(victim.key) > candidateFrequency) return false;
+
+				freedSpace += victim.size;
+				if (freedSpace >= neededSpace) return true;
+			}
+		}
+		return true;
+	}
+
+	/** Evicts the least frequently used entries until cache size is not more than incoming size */
+	private void evict(int maxSize, CacheEntry protectedEntry) {
+		EvictionListener<Bitmap> listener = evictionListener;
+		FrequencyBucket bucket = lowestBucket;
+		while (size > maxSize && bucket != null) {
+			CacheEntry victim = bucket.oldest;
+			if (victim == protectedEntry) {
+				if (victim.newer == null) {
+					bucket = bucket.next;
+					continue;
+				}
+				victim = victim.newer;
+			}
+			FrequencyBucket nextBucket = bucket.next;
+			entries.remove(victim.key);
+			removeFromBucket(victim);
+			size -= victim.size;
+			if (listener != null) {
+				listener.onEvicted(victim.value);
+			}
+			if (bucket.oldest == null) {
+				bucket = nextBucket;
+			}
+		}
+	}
+
+	/**
+	 * Halves usage counts of all entries (but not below 1). Buckets which get the same usage count are merged, entries
+	 * of former lower bucket stay older.
+	 */
+	private void ageUsageCounts() {
+		FrequencyBucket previous = null;
+		FrequencyBucket bucket = lowestBucket;
+		while (bucket != null) {
+			FrequencyBucket next = bucket.next;
+			int usageCount = Math.max(1, bucket.usageCount >> 1);
+			if (previous != null && previous.usageCount == usageCount) {
+				for (CacheEntry entry = bucket.oldest; entry != null; entry = entry.newer) {
+					entry.bucket = previous;
+				}
+				previous.newest.newer = bucket.oldest;
+				bucket.oldest.older = previous.newest;
+				previous.newest = bucket.newest;
+				previous.next = next;
+				if (next != null) {
+					next.previous = previous;
+				}
+			} else {
+				bucket.usageCount = usageCount;
+				previous = bucket;
+			}
+			bucket = next;
+		}
+	}
+
+	/** Moves entry into bucket of next usage count. Doesn't allocate memory unless new bucket is needed. */
+	private void increaseUsageCount(CacheEntry entry) {
+		FrequencyBucket currentBucket = entry.bucket;
+		int usageCount = currentBucket.usageCount + 1;
+		FrequencyBucket next = currentBucket.next;
+		if (currentBucket.oldest == entry && currentBucket.newest == entry && (next == null || next.usageCount != usageCount)) {
+			// Entry is alone in its bucket, so bucket just gets new usage count
+			currentBucket.usageCount = usageCount;
+			return;
+		}
+		FrequencyBucket nextBucket = getBucket(currentBucket, usageCount);
+		removeFromBucket(entry);
+		addToBucket(entry, nextBucket);
+	}
+
+	/**
+	 * Returns bucket for usage count which goes right after incoming bucket (<b>null</b> - the lowest bucket). Creates
+	 * new bucket if there is no bucket for this usage count.
+	 */
+	private FrequencyBucket getBucket(FrequencyBucket previous, int usageCount) {
+		FrequencyBucket next = previous == null ? lowestBucket : previous.next;
+		if (next != null && next.usageCount == usageCount) return next;
+
+		FrequencyBucket bucket = spareBucket;
+		if (bucket == null) {
+			bucket = new FrequencyBucket();
+		} else {
+			spareBucket = null;
+		}
+		bucket.usageCount = usageCount;
+		bucket.previous = previous;
+		bucket.next = next;
+		if (next != null) {
+			next.previous = bucket;
+		}
+		if (previous == null) {
+			lowestBucket = bucket;
+		} else {
+			previous.next = bucket;
+		}
+		return bucket;
+	}
+
+	/** Adds entry to the end (as the newest one) of bucket */
+	private void addToBucket(CacheEntry entry, FrequencyBucket bucket) {
+		entry.older = bucket.newest;
+		entry.newer = null;
+		if (bucket.newest == null) {
+			bucket.oldest = entry;
+		} else {
+			bucket.newest.newer = entry;
+		}
+		bucket.newest = entry;
+		entry.bucket = bucket;
+	}
+
+	/** Removes entry from its bucket, removes bucket if it becomes empty */
+	private void removeFromBucket(CacheEntry entry) {
+		FrequencyBucket bucket = entry.bucket;
+		if (entry.older == null) {
+			bucket.oldest = entry.newer;
+		} else {
+			entry.older.newer = entry.newer;
+		}
+		if (entry.newer == null) {
+			bucket.newest = entry.older;
+		} else {
+			entry.newer.older = entry.older;
+		}
+		entry.older = null;
+		entry.newer = null;
+		entry.bucket = null;
+		if (bucket.oldest == null) {
+			if (bucket.previous == null) {
+				lowestBucket = bucket.next;
+			} else {
+				bucket.previous.next = bucket.next;
+			}
+			if (bucket.next != null) {
+				bucket.next.previous = bucket.previous;
+			}
+			bucket.previous = null;
+			bucket.next = null;
+			spareBucket = bucket;
+		}
+	}
+
+	private int getSize(Bitmap value) {
+		return value.getRowBytes() * value.getHeight();
+	}
+
+	private static class CacheEntry {
+		final String key;
+		Bitmap value;
+		int size;
+		FrequencyBucket bucket;
+		/** Neighbours in bucket's list */
+		CacheEntry older;
+		CacheEntry newer;
+
+		CacheEntry(String key, Bitmap value, int size) {
+			this.key = key;
+			this.value = value;
+			this.size = size;
+		}
+	}
+
+	/** Entries with the same usage count in order of getting this count (linked list from the oldest entry) */
+	private static class FrequencyBucket {
+		int usageCount;
+		CacheEntry oldest;
+		CacheEntry newest;
+		FrequencyBucket previous;
+		FrequencyBucket next;
+	}
+}
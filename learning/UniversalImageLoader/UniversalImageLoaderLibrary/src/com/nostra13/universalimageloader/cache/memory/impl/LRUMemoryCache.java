@@ -0,0 +1,121 @@
+package com.nostra13.universalimageloader.cache.memory.impl;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import android.graphics.Bitmap;
+
+import com.nostra13.universalimageloader.cache.memory.EvictionListener;
+import com.nostra13.universalimageloader.cache.memory.MemoryCacheAware;
+
+/**
+ * Limited {@link Bitmap bitmap} cache which keeps strong references to bitmaps. Size of all stored bitmaps will not to
+ * exceed size limit. When cache reaches limit size then the least recently used bitmap is deleted from cache.<br />
+ * Unlike {@link LRULimitedMemoryCache} all operations take constant time: bitmaps are stored in one access-ordered map
+ * by cache keys (not by bitmap identity), so there are no list walks on put, get and eviction.
+ */
+public class LRUMemoryCache implements MemoryCacheAware<String, Bitmap> {
+
+	private static final int INITIAL_CAPACITY = 16;
+	private static final float LOAD_FACTOR = 0.75f;
+
+	private final int sizeLimit;
+
+	/** Guarded by this cache instance */
+	private final LinkedHashMap<String, Bitmap> map = new LinkedHashMap<String, Bitmap>(INITIAL_CAPACITY, LOAD_FACTOR, true);
+	/** Guarded by this cache instance */
+	private int size = 0;
+
+	private volatile EvictionListener<Bitmap> evictionListener;
+
+	/**
+	 * @param sizeLimit
+	 *            Maximum size for cache (in bytes)
+	 */
+	public LRUMemoryCache(int sizeLimit) {
+		if (sizeLimit <= 0) throw new IllegalArgumentException("sizeLimit must be a positive number");
+		this.sizeLimit = sizeLimit;
+	}
+
+	@Override
+	public boolean put(String key, Bitmap value) {
+		if (key == null || value == null) throw new NullPointerException("key == null || value == null");
+
+		int valueSize = getSize(value);
+		if (valueSize >= sizeLimit) return false;
+
+		synchronized (this) {
+			Bitmap previous = map.put(key, value);
+			size += valueSize;
+			if (previous != null) {
+				size -= getSize(previous);
+			}
+			trimToSize(sizeLimit);
+		}
+		return true;
+	}
+
+	@Override
+	public synchronized Bitmap get(String key) {
+		return map.get(key);
+	}
+
+	@Override
+	public synchronized void remove(String key) {
+		Bitmap previous = map.remove(key);
+		if (previous != null) {
+			size -= getSize(previous);
+		}
+	}
+
+	@Override
+	public synchronized Collection<String> keys() {
+		return new HashSet<String>(map.keySet());
+	}
+
+	@Override
+	public synchronized void clear() {
+		map.clear();
+		size = 0;
+	}
+
+	/** Returns size of all stored bitmaps (in bytes) */
+	public synchronized int getSize() {
+		return size;
+	}
+
+	public int getSizeLimit() {
+		return sizeLimit;
+	}
+
+	/**
+	 * Sets listener for bitmaps evicted from cache because of size limit (e.g.
+	 * {@link com.nostra13.universalimageloader.cache.memory.BitmapPool BitmapPool})
+	 */
+	public void setEvictionListener(EvictionListener<Bitmap> evictionListener) {
+		this.evictionListener = evictionListener;
+	}
+
+	/** Removes the least recently used bitmaps until size of all stored bitmaps is not more than incoming size */
+	private void trimToSize(int maxSize) {
+		EvictionListener<Bitmap> listener = evictionListener;
+		Iterator<Map.Entry<String, Bitmap>> it = map.entrySet().iterator();
+		while (size > maxSize && it.hasNext()) {
+			Map.Entry<String, Bitmap> eldest = it.next();
+			it.remove();
+
+			Bitmap evictedValue = eldest.getValue();
+			size -= getSize(evictedValue);
+			if (listener != null) {
+				listener.onEvicted(evictedValue);
+			}
+		}
+	}
+
+	private int getSize(Bitmap value) {
+		return value.getRowBytes() * value.getHeight();
+	}
+}
@@ -2,11 +2,10 @@ package com.nostra13.universalimageloader.cache.memory.impl;
 
 import java.lang.ref.Reference;
 import java.lang.ref.WeakReference;
-import java.util.Collections;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.Set;
 
 import com.nostra13.universalimageloader.cache.memory.LimitedMemoryCache;
 
@@ -14,19 +13,19 @@ import android.graphics.Bitmap;
 
 /**
  * Limited {@link Bitmap bitmap} cache. Provides {@link Bitmap bitmaps} storing. Size of all stored bitmaps will not to
- * exceed size limit. When cache reaches limit size then the bitmap which used the least frequently is deleted from
- * cache.
+ * exceed size limit. When cache reaches limit size then the largest bitmap is deleted from cache.<br />
+ * Bitmaps are indexed by binary heap (ordered by size), so finding and removing of the largest bitmap take O(log n)
+ * time.
  * 
  * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
  */
 public class LargestLimitedMemoryCache extends LimitedMemoryCache<String, Bitmap> {
 
 	/**
-	 * Contains strong references to stored objects (keys) and last object usage date (in milliseconds). If hard cache
-	 * size will exceed limit then object with the least frequently usage is deleted (but it continue exist at
-	 * {@link #softMap} and can be collected by GC at any time)
+	 * Contains strong references to stored objects ordered by their sizes. If hard cache size will exceed limit then
+	 * the largest object is deleted (but it continue exist at {@link #softMap} and can be collected by GC at any time)
 	 */
-	private final Map<Bitmap, Integer> valueSizes = Collections.synchronizedMap(new HashMap<Bitmap, Integer>());
+	private final SizeHeap valueSizes = new SizeHeap();
 
 	public LargestLimitedMemoryCache(int sizeLimit) {
 		super(sizeLimit);
@@ -35,7 +34,7 @@ public class LargestLimitedMemoryCache extends LimitedMemoryCache<String, Bitmap
 	@Override
 	public boolean put(String key, Bitmap value) {
 		if (super.put(key, value)) {
-			valueSizes.put(value, getSize(value));
+			valueSizes.add(value, getSize(value));
 			return true;
 		} else {
 			return false;
@@ -64,29 +63,124 @@ public class LargestLimitedMemoryCache extends LimitedMemoryCache<String, Bitmap
 
 	@Override
 	protected Bitmap removeNext() {
-		Integer maxSize = null;
-		Bitmap largestValue = null;
-		Set<Entry<Bitmap, Integer>> entries = valueSizes.entrySet();
-		synchronized (valueSizes) {
-			for (Entry<Bitmap, Integer> entry : entries) {
-				if (largestValue == null) {
-					largestValue = entry.getKey();
-					maxSize = entry.getValue();
-				} else {
-					Integer size = entry.getValue();
-					if (size > maxSize) {
-						maxSize = size;
-						largestValue = entry.getKey();
-					}
-				}
-			}
-		}
-		valueSizes.remove(largestValue);
-		return largestValue;
+		return valueSizes.removeLargest();
 	}
 
 	@Override
 	protected Reference<Bitmap> createReference(Bitmap value) {
 		return new WeakReference<Bitmap>(value);
 	}
+
+	/**
+	 * Binary max-heap of bitmaps by their sizes. Knows position of every bitmap so any bitmap can be removed fast.
+	 * Bitmap can be stored in cache by several keys, so heap counts storings of every bitmap like hard cache does and
+	 * removes bitmap from heap when its last storing is removed.
+	 */
+	private static class SizeHeap {
+
+		private final List<HeapEntry> heap = new ArrayList<HeapEntry>();
+		private final Map<Bitmap, HeapEntry> entries = new HashMap<Bitmap, HeapEntry>();
+
+		synchronized void add(Bitmap value, int size) {
+			HeapEntry entry = entries.get(value);
+			if (entry != null) {
+				entry.count++;
+				return;
+			}
+
+			entry = new HeapEntry(value, size);
+			entries.put(value, entry);
+			entry.index = heap.size();
+			heap.add(entry);
+			siftUp(entry.index);
+		}
+
+		synchronized void remove(Bitmap value) {
+			HeapEntry entry = entries.get(value);
+			if (entry != null && --entry.count == 0) {
+				entries.remove(value);
+				removeAt(entry.index);
+			}
+		}
+
+		synchronized Bitmap removeLargest() {
+			if (heap.isEmpty()) return null;
+
+			HeapEntry largest = heap.get(0);
+			if (--largest.count == 0) {
+				entries.remove(largest.value);
+				removeAt(0);
+			}
+			return largest.value;
+		}
+
+		synchronized void clear() {
+			heap.clear();
+			entries.clear();
+		}
+
+		private void removeAt(int index) {
+			int lastIndex = heap.size() - 1;
+			HeapEntry last = heap.remove(lastIndex);
+			if (index == lastIndex) return;
+
+			set(index, last);
+			if (index > 0 && heap.get((index - 1) / 2).size < last.size) {
+				siftUp(index);
+			} else {
+				siftDown(index);
+			}
+		}
+
+		private void siftUp(int index) {
+			HeapEntry entry = heap.get(index);
+			while (index > 0) {
+				int parentIndex = (index - 1) / 2;
+				HeapEntry parent = heap.get(parentIndex);
+				if (parent.size >= entry.size) break;
+
+				set(index, parent);
+				index = parentIndex;
+			}
+			set(index, entry);
+		}
+
+		private void siftDown(int index) {
+			HeapEntry entry = heap.get(index);
+			int size = heap.size();
+			while (true) {
+				int childIndex = 2 * index + 1;
+				if (childIndex >= size) break;
+
+				HeapEntry child = heap.get(childIndex);
+				if (childIndex + 1 < size && heap.get(childIndex + 1).size > child.size) {
+					childIndex++;
+					child = heap.get(childIndex);
+				}
+				if (entry.size >= child.size) break;
+
+				set(index, child);
+				index = childIndex;
+			}
+			set(index, entry);
+		}
+
+		private void set(int index, HeapEntry entry) {
+			heap.set(index, entry);
+			entry.index = index;
+		}
+	}
+
+	private static class HeapEntry {
+		final Bitmap value;
+		final int size;
+		int index;
+		/** Count of storings of bitmap in cache */
+		int count = 1;
+
+		HeapEntry(Bitmap value, int size) {
+			this.value = value;
+			this.size = size;
+		}
+	}
 }
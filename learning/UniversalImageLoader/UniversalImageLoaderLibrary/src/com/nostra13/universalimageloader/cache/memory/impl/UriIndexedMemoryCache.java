@@ -0,0 +1,170 @@
+package com.nostra13.universalimageloader.cache.memory.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import android.graphics.Bitmap;
+
+import com.nostra13.universalimageloader.cache.memory.MemoryCacheAware;
+import com.nostra13.universalimageloader.cache.memory.PeekableMemoryCacheAware;
+import com.nostra13.universalimageloader.core.assist.MemoryCacheUtil;
+
+/**
+ * Decorator for {@link MemoryCacheAware}. Keeps index of cache keys by image URI, so all cached sizes of the image can
+ * be found without scanning of all cache keys. Optionally keeps only one size of every image in cache: when you put
+ * some value into cache by key and it's accepted by decorated cache so entries for other sizes of the same image
+ * are removed from cache.<br />
+ * Index can contain keys of entries which were evicted by decorated cache. Such keys are cleaned up periodically.
+ * Getting of values and reading of index don't take lock of this cache, only changes of cache are synchronized.<br />
+ * <b>NOTE:</b> Used for internal needs. Normally you don't need to use this class.
+ * 
+ * @see MemoryCacheUtil
+ */
+public class UriIndexedMemoryCache implements PeekableMemoryCacheAware<String, Bitmap> {
+
+	private static final int MIN_INDEX_CLEANUP_THRESHOLD = 64;
+
+	private final MemoryCacheAware<String, Bitmap> cache;
+	private final boolean denyMultipleSizes;
+
+	/** Key lists are copied on write, so index can be read without lock. Changes are guarded by this cache instance. */
+	private final Map<String, List<String>> keysForUri = new ConcurrentHashMap<String, List<String>>();
+	/** Guarded by this cache instance */
+	private int indexedKeyCount = 0;
+	private int cleanupThreshold = MIN_INDEX_CLEANUP_THRESHOLD;
+
+	/**
+	 * @param cache
+	 *            Decorated cache
+	 * @param denyMultipleSizes
+	 *            <b>true</b> - if only one size of every image should be kept in cache
+	 */
+	public UriIndexedMemoryCache(MemoryCacheAware<String, Bitmap> cache, boolean denyMultipleSizes) {
+		this.cache = cache;
+		this.denyMultipleSizes = denyMultipleSizes;
+	}
+
+	@Override
+	public synchronized boolean put(String key, Bitmap value) {
+		// Other sizes are kept if decorated cache rejects new value
+		if (!cache.put(key, value)) return false;
+
+		String imageUri = MemoryCacheUtil.getImageUri(key);
+		List<String> keys = keysForUri.get(imageUri);
+		if (keys != null && denyMultipleSizes) {
+			for (String cacheKey : keys) {
+				if (!cacheKey.equals(key)) {
+					cache.remove(cacheKey);
+					removeFromIndex(imageUri, cacheKey);
+				}
+			}
+		}
+
+		// Key is indexed only when value is really cached
+		keys = keysForUri.get(imageUri);
+		if (keys == null) {
+			keys = new CopyOnWriteArrayList<String>();
+			keysForUri.put(imageUri, keys);
+		}
+		if (!keys.contains(key)) {
+			keys.add(key);
+			indexedKeyCount++;
+		}
+		if (indexedKeyCount > cleanupThreshold) {
+			cleanUpIndex();
+		}
+		return true;
+	}
+
+	@Override
+	public Bitmap get(String key) {
+		return cache.get(key);
+	}
+
+	/** Peeks value if decorated cache supports it, otherwise just gets value */
+	@Override
+	public Bitmap peek(String key) {
+		if (cache instanceof PeekableMemoryCacheAware) {
+			return ((PeekableMemoryCacheAware<String, Bitmap>) cache).peek(key);
+		}
+		return cache.get(key);
+	}
+
+	@Override
+	public synchronized void remove(String key) {
+		cache.remove(key);
+		removeFromIndex(MemoryCacheUtil.getImageUri(key), key);
+	}
+
+	@Override
+	public Collection<String> keys() {
+		return cache.keys();
+	}
+
+	@Override
+	public synchronized void clear() {
+		cache.clear();
+		keysForUri.clear();
+		indexedKeyCount = 0;
+	}
+
+	/**
+	 * Returns cache keys of all sizes of incoming image. Keys of recently evicted entries can be returned too.
+	 * 
+	 * @param imageUri
+	 *            Image URI
+	 */
+	public List<String> getKeysForUri(String imageUri) {
+		List<String> keys = keysForUri.get(imageUri);
+		if (keys == null) return Collections.emptyList();
+		return new ArrayList<String>(keys);
+	}
+
+	/** Removes from cache all sizes of incoming image */
+	public synchronized void removeForUri(String imageUri) {
+		List<String> keys = keysForUri.remove(imageUri);
+		if (keys == null) return;
+
+		for (String key : keys) {
+			cache.remove(key);
+		}
+		indexedKeyCount -= keys.size();
+	}
+
+	private void removeFromIndex(String imageUri, String key) {
+		List<String> keys = keysForUri.get(imageUri);
+		if (keys != null && keys.remove(key)) {
+			indexedKeyCount--;
+			if (keys.isEmpty()) {
+				keysForUri.remove(imageUri);
+			}
+		}
+	}
+
+	/** Rebuilds index from actual keys of decorated cache to remove keys of evicted entries */
+	private void cleanUpIndex() {
+		Map<String, List<String>> actualKeysForUri = new HashMap<String, List<String>>();
+		indexedKeyCount = 0;
+		for (String key : cache.keys()) {
+			String imageUri = MemoryCacheUtil.getImageUri(key);
+			List<String> keys = actualKeysForUri.get(imageUri);
+			if (keys == null) {
+				keys = new ArrayList<String>(1);
+				actualKeysForUri.put(imageUri, keys);
+			}
+			keys.add(key);
+			indexedKeyCount++;
+		}
+		keysForUri.keySet().retainAll(actualKeysForUri.keySet());
+		for (Map.Entry<String, List<String>> entry : actualKeysForUri.entrySet()) {
+			keysForUri.put(entry.getKey(), new CopyOnWriteArrayList<String>(entry.getValue()));
+		}
+		cleanupThreshold = Math.max(MIN_INDEX_CLEANUP_THRESHOLD, 2 * indexedKeyCount);
+	}
+}
@@ -11,10 +11,10 @@ import com.nostra13.universalimageloader.cache.disc.impl.TotalSizeLimitedDiscCac
 import com.nostra13.universalimageloader.cache.disc.impl.UnlimitedDiscCache;
 import com.nostra13.universalimageloader.cache.disc.naming.FileNameGenerator;
 import com.nostra13.universalimageloader.cache.disc.naming.HashCodeFileNameGenerator;
+import com.nostra13.universalimageloader.cache.memory.BitmapPool;
 import com.nostra13.universalimageloader.cache.memory.MemoryCacheAware;
-import com.nostra13.universalimageloader.cache.memory.impl.FuzzyKeyMemoryCache;
-import com.nostra13.universalimageloader.cache.memory.impl.UsingFreqLimitedMemoryCache;
-import com.nostra13.universalimageloader.core.assist.MemoryCacheUtil;
+import com.nostra13.universalimageloader.cache.memory.impl.LFUMemoryCache;
+import com.nostra13.universalimageloader.cache.memory.impl.UriIndexedMemoryCache;
 import com.nostra13.universalimageloader.core.display.BitmapDisplayer;
 import com.nostra13.universalimageloader.core.display.SimpleBitmapDisplayer;
 import com.nostra13.universalimageloader.core.download.ImageDownloader;
@@ -34,7 +34,7 @@ public class DefaultConfigurationFactory {
 	}
 
 	/** Create default implementation of {@link DisckCacheAware} depends on incoming parameters */
-	public static DiscCacheAware createDiscCache(Context context, FileNameGenerator discCacheFileNameGenerator, int discCacheSize, int discCacheFileCount) {
+	public static DiscCacheAware createDiscCache(Context context, FileNameGenerator discCacheFileNameGenerator, long discCacheSize, int discCacheFileCount) {
 		if (discCacheSize > 0) {
 			File individualCacheDir = StorageUtils.getIndividualCacheDirectory(context);
 			return new TotalSizeLimitedDiscCache(individualCacheDir, discCacheFileNameGenerator, discCacheSize);
@@ -49,11 +49,19 @@ public class DefaultConfigurationFactory {
 
 	/** Create default implementation of {@link MemoryCacheAware} depends on incoming parameters */
 	public static MemoryCacheAware<String, Bitmap> createMemoryCache(int memoryCacheSize, boolean denyCacheImageMultipleSizesInMemory) {
-		MemoryCacheAware<String, Bitmap> memoryCache = new UsingFreqLimitedMemoryCache(memoryCacheSize);
-		if (denyCacheImageMultipleSizesInMemory) {
-			memoryCache = new FuzzyKeyMemoryCache<String, Bitmap>(memoryCache, MemoryCacheUtil.createFuzzyKeyComparator());
+		return createMemoryCache(memoryCacheSize, denyCacheImageMultipleSizesInMemory, null);
+	}
+
+	/**
+	 * Create default implementation of {@link MemoryCacheAware} depends on incoming parameters. Bitmaps evicted from
+	 * memory cache are passed to bitmap pool (if it isn't null).
+	 */
+	public static MemoryCacheAware<String, Bitmap> createMemoryCache(int memoryCacheSize, boolean denyCacheImageMultipleSizesInMemory, BitmapPool bitmapPool) {
+		LFUMemoryCache lfuMemoryCache = new LFUMemoryCache(memoryCacheSize);
+		if (bitmapPool != null) {
+			lfuMemoryCache.setEvictionListener(bitmapPool);
 		}
-		return memoryCache;
+		return new UriIndexedMemoryCache(lfuMemoryCache, denyCacheImageMultipleSizesInMemory);
 	}
 
 	/** Create default implementation of {@link ImageDownloader} */
@@ -21,7 +21,9 @@ final class DisplayBitmapTask implements Runnable {
 
 	private final Bitmap bitmap;
 	private final ImageView imageView;
+	private final ImageViewBinding imageViewBinding;
 	private final String memoryCacheKey;
+	private final DisplayImageOptions options;
 	private final BitmapDisplayer bitmapDisplayer;
 	private final ImageLoadingListener listener;
 
@@ -30,26 +32,34 @@ final class DisplayBitmapTask implements Runnable {
 	public DisplayBitmapTask(Bitmap bitmap, ImageLoadingInfo imageLoadingInfo) {
 		this.bitmap = bitmap;
 		imageView = imageLoadingInfo.imageView;
+		imageViewBinding = imageLoadingInfo.imageViewBinding;
 		memoryCacheKey = imageLoadingInfo.memoryCacheKey;
-		bitmapDisplayer = imageLoadingInfo.options.getDisplayer();
+		options = imageLoadingInfo.options;
+		bitmapDisplayer = options.getDisplayer();
 		listener = imageLoadingInfo.listener;
 	}
 
+	/** Bitmap delivery must be {@linkplain ImageLoader#onDeliveryStarted(Bitmap) started} before task is posted */
 	public void run() {
-		if (isViewWasReused()) {
-			if (loggingEnabled) L.i(LOG_TASK_CANCELLED, memoryCacheKey);
-			listener.onLoadingCancelled();
-		} else {
-			if (loggingEnabled) L.i(LOG_DISPLAY_IMAGE_IN_IMAGEVIEW, memoryCacheKey);
-			Bitmap displayedBitmap = bitmapDisplayer.display(bitmap, imageView);
-			listener.onLoadingComplete(displayedBitmap);
-			ImageLoader.getInstance().cancelDisplayTask(imageView);
+		try {
+			if (isViewWasReused()) {
+				if (loggingEnabled) L.i(LOG_TASK_CANCELLED, memoryCacheKey);
+				listener.onLoadingCancelled();
+			} else {
+				if (loggingEnabled) L.i(LOG_DISPLAY_IMAGE_IN_IMAGEVIEW, memoryCacheKey);
+				ImageLoader.getInstance().onBitmapDisplayed(bitmap, imageView, options);
+				Bitmap displayedBitmap = bitmapDisplayer.display(bitmap, imageView);
+				listener.onLoadingComplete(displayedBitmap);
+				ImageLoader.getInstance().cancelDisplayTask(imageView);
+			}
+		} finally {
+			ImageLoader.getInstance().onDeliveryFinished(bitmap);
 		}
 	}
 
 	/** Checks whether memory cache key (image URI) for current ImageView is actual */
 	private boolean isViewWasReused() {
-		String currentCacheKey = ImageLoader.getInstance().getLoadingUriForView(imageView);
+		String currentCacheKey = imageViewBinding.getMemoryCacheKey();
 		return !memoryCacheKey.equals(currentCacheKey);
 	}
 
@@ -2,20 +2,25 @@ package com.nostra13.universalimageloader.core;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.reflect.Field;
 import java.net.URI;
 
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.BitmapFactory.Options;
 
+import com.nostra13.universalimageloader.cache.memory.BitmapPool;
 import com.nostra13.universalimageloader.core.assist.ImageScaleType;
 import com.nostra13.universalimageloader.core.assist.ImageSize;
+import com.nostra13.universalimageloader.core.assist.RewindableInputStream;
 import com.nostra13.universalimageloader.core.assist.ViewScaleType;
 import com.nostra13.universalimageloader.core.download.ImageDownloader;
 import com.nostra13.universalimageloader.utils.L;
 
 /**
- * Decodes images to {@link Bitmap}, scales them to needed size
+ * Decodes images to {@link Bitmap}, scales them to needed size. Image stream is retrieved once per decoding (image
+ * bounds and image itself are decoded from the same stream). Bitmaps from {@link BitmapPool} are reused for decoding if
+ * it's possible.
  * 
  * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
  * 
@@ -28,11 +33,22 @@ class ImageDecoder {
 
 	private static final String LOG_IMAGE_SUBSAMPLED = "Original image (%1$dx%2$d) is going to be subsampled to %3$dx%4$d view. Computed scale size - %5$d";
 	private static final String LOG_IMAGE_SCALED = "Subsampled image (%1$dx%2$d) was scaled to %3$dx%4$d";
+	private static final String LOG_IMAGE_STREAM_REOPENED = "Image header is too large, image stream is reopened [%s]";
+	private static final String LOG_REUSE_BITMAP = "Reuse pooled bitmap (%1$dx%2$d) for decoding [%3$s]";
+	private static final String LOG_CANT_REUSE_BITMAP = "Pooled bitmap can't be reused for decoding, image stream is reopened [%s]";
+
+	/** Max count of bytes which can be read during image bounds decoding without reopening of image stream */
+	private static final int MAX_IMAGE_HEADER_SIZE = 128 * 1024; // 128 Kb
+
+	/** Options.inBitmap and Options.inMutable fields (available since Android 3.0) */
+	private static final Field IN_BITMAP_FIELD = getOptionsField("inBitmap");
+	private static final Field IN_MUTABLE_FIELD = getOptionsField("inMutable");
 
 	private final URI imageUri;
 	private final ImageDownloader imageDownloader;
 	private final DisplayImageOptions displayOptions;
 
+	private BitmapPool bitmapPool;
 	private boolean loggingEnabled;
 
 	/**
@@ -79,15 +95,32 @@ class ImageDecoder {
 	 * @throws IOException
 	 */
 	public Bitmap decode(ImageSize targetSize, ImageScaleType scaleType, ViewScaleType viewScaleType) throws IOException {
-		Options decodeOptions = getBitmapOptionsForImageDecoding(targetSize, scaleType, viewScaleType);
-		InputStream imageStream = imageDownloader.getStream(imageUri);
+		RewindableInputStream imageStream = new RewindableInputStream(imageDownloader.getStream(imageUri), MAX_IMAGE_HEADER_SIZE);
+		Options decodeOptions = null;
 		Bitmap subsampledBitmap;
 		try {
-			subsampledBitmap = BitmapFactory.decodeStream(imageStream, null, decodeOptions);
+			decodeOptions = getBitmapOptionsForImageDecoding(imageStream, targetSize, scaleType, viewScaleType);
+			if (imageStream.rewind()) {
+				subsampledBitmap = BitmapFactory.decodeStream(imageStream, null, decodeOptions);
+			} else {
+				// Image header is too large for stream buffer so we have to get image stream again
+				imageStream.close();
+				subsampledBitmap = decodeReopenedStream(decodeOptions);
+			}
+		} catch (IllegalArgumentException e) {
+			// Pooled bitmap doesn't fit the image so we have to decode image into new bitmap
+			Bitmap reusableBitmap = takeReusableBitmap(decodeOptions);
+			if (reusableBitmap == null) throw e;
+			releaseBitmap(reusableBitmap);
+
+			if (loggingEnabled) L.d(LOG_CANT_REUSE_BITMAP, imageUri);
+			imageStream.close();
+			subsampledBitmap = decodeReopenedStream(decodeOptions);
 		} finally {
 			imageStream.close();
 		}
 		if (subsampledBitmap == null) {
+			releaseBitmap(takeReusableBitmap(decodeOptions));
 			return null;
 		}
 
@@ -99,31 +132,78 @@ class ImageDecoder {
 		return subsampledBitmap;
 	}
 
-	private Options getBitmapOptionsForImageDecoding(ImageSize targetSize, ImageScaleType scaleType, ViewScaleType viewScaleType) throws IOException {
+	private Bitmap decodeReopenedStream(Options decodeOptions) throws IOException {
+		if (loggingEnabled) L.d(LOG_IMAGE_STREAM_REOPENED, imageUri);
+		InputStream imageStream = imageDownloader.getStream(imageUri);
+		try {
+			return BitmapFactory.decodeStream(imageStream, null, decodeOptions);
+		} finally {
+			imageStream.close();
+		}
+	}
+
+	private Options getBitmapOptionsForImageDecoding(InputStream imageStream, ImageSize targetSize, ImageScaleType scaleType, ViewScaleType viewScaleType) {
+		// decode image size
 		Options decodeOptions = new Options();
-		decodeOptions.inSampleSize = computeImageScale(targetSize, scaleType, viewScaleType);
+		decodeOptions.inJustDecodeBounds = true;
+		BitmapFactory.decodeStream(imageStream, null, decodeOptions);
+		decodeOptions.inJustDecodeBounds = false;
+
+		decodeOptions.inSampleSize = computeImageScale(decodeOptions.outWidth, decodeOptions.outHeight, targetSize, scaleType, viewScaleType);
 		decodeOptions.inPreferredConfig = displayOptions.getBitmapConfig();
+		if (bitmapPool != null) {
+			setReusableBitmap(decodeOptions);
+		}
 		return decodeOptions;
 	}
 
-	@SuppressWarnings("deprecation")
-	private int computeImageScale(ImageSize targetSize, ImageScaleType scaleType, ViewScaleType viewScaleType) throws IOException {
-		int targetWidth = targetSize.getWidth();
-		int targetHeight = targetSize.getHeight();
+	/**
+	 * Makes decoded bitmap mutable (so it can be pooled later) and sets pooled bitmap for reuse if there is a bitmap of
+	 * the same size and config in pool. Bitmap can be reused only if image isn't subsampled.
+	 */
+	private void setReusableBitmap(Options decodeOptions) {
+		try {
+			IN_MUTABLE_FIELD.setBoolean(decodeOptions, true);
+			if (decodeOptions.inSampleSize == 1 && decodeOptions.inPreferredConfig != null) {
+				Bitmap reusableBitmap = bitmapPool.get(decodeOptions.outWidth, decodeOptions.outHeight, decodeOptions.inPreferredConfig);
+				if (reusableBitmap != null) {
+					IN_BITMAP_FIELD.set(decodeOptions, reusableBitmap);
+					if (loggingEnabled) L.d(LOG_REUSE_BITMAP, decodeOptions.outWidth, decodeOptions.outHeight, imageUri);
+				}
+			}
+		} catch (IllegalAccessException e) {
+			L.e(e);
+		}
+	}
 
-		// decode image size
-		Options options = new Options();
-		options.inJustDecodeBounds = true;
-		InputStream imageStream = imageDownloader.getStream(imageUri);
+	/** Removes reusable bitmap from decoding options and returns it (or <b>null</b> if it wasn't set) */
+	private Bitmap takeReusableBitmap(Options decodeOptions) {
+		if (decodeOptions == null || IN_BITMAP_FIELD == null) return null;
+
+		Bitmap reusableBitmap = null;
 		try {
-			BitmapFactory.decodeStream(imageStream, null, options);
-		} finally {
-			imageStream.close();
+			reusableBitmap = (Bitmap) IN_BITMAP_FIELD.get(decodeOptions);
+			IN_BITMAP_FIELD.set(decodeOptions, null);
+		} catch (IllegalAccessException e) {
+			L.e(e);
+		}
+		return reusableBitmap;
+	}
+
+	/** Returns unused bitmap into pool or recycles it if it can't be pooled */
+	private void releaseBitmap(Bitmap bitmap) {
+		if (bitmap == null) return;
+		if (bitmapPool == null || !bitmapPool.put(bitmap)) {
+			bitmap.recycle();
 		}
+	}
+
+	@SuppressWarnings("deprecation")
+	private int computeImageScale(int imageWidth, int imageHeight, ImageSize targetSize, ImageScaleType scaleType, ViewScaleType viewScaleType) {
+		int targetWidth = targetSize.getWidth();
+		int targetHeight = targetSize.getHeight();
 
 		int scale = 1;
-		int imageWidth = options.outWidth;
-		int imageHeight = options.outHeight;
 		int widthScale = imageWidth / targetWidth;
 		int heightScale = imageHeight / targetHeight;
 
@@ -179,7 +259,7 @@ class ImageDecoder {
 				|| (scaleType == ImageScaleType.EXACTLY_STRETCHED && destWidth != srcWidth && destHeight != srcHeight)) {
 			scaledBitmap = Bitmap.createScaledBitmap(subsampledBitmap, destWidth, destHeight, true);
 			if (scaledBitmap != subsampledBitmap) {
-				subsampledBitmap.recycle();
+				releaseBitmap(subsampledBitmap);
 			}
 			if (loggingEnabled) L.d(LOG_IMAGE_SCALED, (int) srcWidth, (int) srcHeight, destWidth, destHeight);
 		} else {
@@ -189,7 +269,24 @@ class ImageDecoder {
 		return scaledBitmap;
 	}
 
+	void setBitmapPool(BitmapPool bitmapPool) {
+		this.bitmapPool = isBitmapReuseSupported() ? bitmapPool : null;
+	}
+
 	void setLoggingEnabled(boolean loggingEnabled) {
 		this.loggingEnabled = loggingEnabled;
 	}
+
+	/** Returns <b>true</b> if bitmaps can be reused for decoding on current Android version (3.0 and higher) */
+	static boolean isBitmapReuseSupported() {
+		return IN_BITMAP_FIELD != null && IN_MUTABLE_FIELD != null;
+	}
+
+	private static Field getOptionsField(String fieldName) {
+		try {
+			return Options.class.getField(fieldName);
+		} catch (NoSuchFieldException e) {
+			return null;
+		}
+	}
 }
\ No newline at end of file
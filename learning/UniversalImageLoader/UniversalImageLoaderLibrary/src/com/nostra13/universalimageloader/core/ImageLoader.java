@@ -1,34 +1,41 @@
 package com.nostra13.universalimageloader.core;
 
 import java.lang.reflect.Field;
-import java.util.Collections;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.WeakHashMap;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReentrantLock;
 
 import android.content.Context;
+import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.DisplayMetrics;
 import android.view.ViewGroup.LayoutParams;
 import android.widget.ImageView;
 import android.widget.ImageView.ScaleType;
 
 import com.nostra13.universalimageloader.cache.disc.DiscCacheAware;
+import com.nostra13.universalimageloader.cache.disc.RevalidatingDiscCacheAware;
+import com.nostra13.universalimageloader.cache.memory.BitmapPool;
 import com.nostra13.universalimageloader.cache.memory.MemoryCacheAware;
+import com.nostra13.universalimageloader.core.assist.FailReason;
 import com.nostra13.universalimageloader.core.assist.ImageLoadingListener;
 import com.nostra13.universalimageloader.core.assist.ImageSize;
+import com.nostra13.universalimageloader.core.assist.LoadingPriority;
 import com.nostra13.universalimageloader.core.assist.MemoryCacheUtil;
-import com.nostra13.universalimageloader.core.assist.QueueProcessingType;
+import com.nostra13.universalimageloader.core.assist.PausePolicy;
 import com.nostra13.universalimageloader.core.assist.SimpleImageLoadingListener;
-import com.nostra13.universalimageloader.core.assist.deque.LIFOLinkedBlockingDeque;
 import com.nostra13.universalimageloader.core.display.BitmapDisplayer;
 import com.nostra13.universalimageloader.core.display.FakeBitmapDisplayer;
 import com.nostra13.universalimageloader.utils.L;
@@ -47,17 +54,55 @@ public class ImageLoader {
 	private static final String ERROR_NOT_INIT = "ImageLoader must be init with configuration before using";
 	private static final String ERROR_INIT_CONFIG_WITH_NULL = "ImageLoader configuration can not be initialized with null";
 	private static final String LOG_LOAD_IMAGE_FROM_MEMORY_CACHE = "Load image from memory cache [%s]";
+	private static final String LOG_ATTACH_TO_LOADING_TASK = "Image is already loading. Attach to loading task [%s]";
+
+	/** Prefix of loading task keys for images which are only cached on disc (such tasks don't use memory cache) */
+	private static final String DISC_CACHE_ONLY_KEY_PREFIX = "disc:";
+	private static final String REVALIDATION_KEY_PREFIX = "revalidation:";
+
+	/** Count of recently generated memory cache keys to reuse, must be a power of two */
+	private static final int RECENT_CACHE_KEYS_COUNT = 256;
+	/** Count of independently locked parts of ImageView bindings, must be a power of two */
+	private static final int BINDING_STRIPE_COUNT = 16;
+
+	/** ImageView.mMaxWidth and ImageView.mMaxHeight fields */
+	private static final Field MAX_WIDTH_FIELD = getImageViewField("mMaxWidth");
+	private static final Field MAX_HEIGHT_FIELD = getImageViewField("mMaxHeight");
 
 	private ImageLoaderConfiguration configuration;
-	private ExecutorService imageLoadingExecutor;
-	private ExecutorService cachedImageLoadingExecutor;
+	/** Executes loading stage of display tasks (image downloading) */
+	private volatile ThreadPoolExecutor imageLoadingExecutor;
+	/** Executes decoding stage of display tasks (decoding of disc cached images) */
+	private volatile ThreadPoolExecutor decodingExecutor;
+	/** Checks disc cache and routes display tasks to appropriate executor off the UI thread */
+	private volatile ExecutorService taskDistributor;
 
 	private final ImageLoadingListener emptyListener = new SimpleImageLoadingListener();
 	private final BitmapDisplayer fakeBitmapDisplayer = new FakeBitmapDisplayer();
 
-	private final Map<Integer, String> cacheKeysForImageViews = Collections.synchronizedMap(new HashMap<Integer, String>());
+	/** Handler of UI thread, display tasks are posted into it */
+	private final Handler handler = new Handler(Looper.getMainLooper());
+	/** Recently generated memory cache keys (by hash codes of image URIs), they are reused for the same URI and size */
+	private final String[] recentCacheKeys = new String[RECENT_CACHE_KEYS_COUNT];
+
+	/**
+	 * Bindings of ImageViews to images which should be displayed in them (ImageViews are referenced weakly). Bindings
+	 * are split into stripes by identity hash codes of ImageViews, every stripe is guarded by itself. So lookups of
+	 * bindings for different ImageViews mostly don't wait for each other.
+	 */
+	private final BindingStripe[] bindingStripes = new BindingStripe[BINDING_STRIPE_COUNT];
 	private final Map<String, ReentrantLock> uriLocks = new WeakHashMap<String, ReentrantLock>();
-	private final AtomicBoolean paused = new AtomicBoolean(false);
+	/** Tasks which were held because ImageLoader is paused. They are resubmitted on resume. */
+	private final List<LoadAndDisplayImageTask> pausedTasks = new ArrayList<LoadAndDisplayImageTask>();
+	/** Tasks which are loading images at this moment (by memory cache keys) */
+	private final Map<String, LoadAndDisplayImageTask> loadingTasks = new HashMap<String, LoadAndDisplayImageTask>();
+	/**
+	 * Fake ImageViews of prefetch requests (by image URIs) and revalidation requests (by prefixed image URIs) which are
+	 * loading at this moment
+	 */
+	private final Map<String, ImageView> prefetchViews = new HashMap<String, ImageView>();
+	/** Policy of current pause (<b>null</b> - if ImageLoader isn't paused) */
+	private volatile PausePolicy pausePolicy;
 
 	private volatile static ImageLoader instance;
 
@@ -74,6 +119,9 @@ public class ImageLoader {
 	}
 
 	protected ImageLoader() {
+		for (int i = 0; i < BINDING_STRIPE_COUNT; i++) {
+			bindingStripes[i] = new BindingStripe();
+		}
 	}
 
 	/**
@@ -171,6 +219,10 @@ public class ImageLoader {
 	 *             if {@link #init(ImageLoaderConfiguration)} method wasn't called before
 	 */
 	public void displayImage(String uri, ImageView imageView, DisplayImageOptions options, ImageLoadingListener listener) {
+		displayImage(uri, imageView, options, listener, LoadingPriority.VISIBLE, false, false);
+	}
+
+	private void displayImage(String uri, ImageView imageView, DisplayImageOptions options, ImageLoadingListener listener, LoadingPriority priority, boolean discCacheOnly, boolean revalidation) {
 		if (configuration == null) {
 			throw new RuntimeException(ERROR_NOT_INIT);
 		}
@@ -186,50 +238,229 @@ public class ImageLoader {
 		}
 
 		if (uri == null || uri.length() == 0) {
-			cacheKeysForImageViews.remove(imageView.hashCode());
+			cancelLoadingTask(getBinding(imageView).unbind(), imageView);
 			listener.onLoadingStarted();
 			if (options.isShowImageForEmptyUri()) {
 				imageView.setImageResource(options.getImageForEmptyUri());
 			} else {
 				imageView.setImageBitmap(null);
 			}
+			onBitmapDisplayed(null, imageView, options);
 			listener.onLoadingComplete(null);
 			return;
 		}
 
-		ImageSize targetSize = getImageSizeScaleTo(imageView);
-		String memoryCacheKey = MemoryCacheUtil.generateKey(uri, targetSize);
-		cacheKeysForImageViews.put(imageView.hashCode(), memoryCacheKey);
+		int targetWidth = getImageWidthScaleTo(imageView);
+		int targetHeight = getImageHeightScaleTo(imageView);
+		String memoryCacheKey;
+		if (revalidation) {
+			memoryCacheKey = REVALIDATION_KEY_PREFIX + uri;
+		} else if (discCacheOnly) {
+			memoryCacheKey = DISC_CACHE_ONLY_KEY_PREFIX + uri;
+		} else {
+			memoryCacheKey = getMemoryCacheKey(uri, targetWidth, targetHeight);
+		}
+		ImageViewBinding binding = getBinding(imageView);
+		String previousCacheKey = binding.bind(memoryCacheKey);
+		if (!memoryCacheKey.equals(previousCacheKey)) {
+			cancelLoadingTask(previousCacheKey, imageView);
+		}
 
-		Bitmap bmp = configuration.memoryCache.get(memoryCacheKey);
-		if (bmp != null && !bmp.isRecycled()) {
-			if (configuration.loggingEnabled) L.i(LOG_LOAD_IMAGE_FROM_MEMORY_CACHE, memoryCacheKey);
-			listener.onLoadingStarted();
-			options.getDisplayer().display(bmp, imageView);
-			listener.onLoadingComplete(bmp);
+		Bitmap bmp = discCacheOnly ? null : configuration.memoryCache.get(memoryCacheKey);
+		if (bmp != null && !bmp.isRecycled() && onDeliveryStarted(bmp)) {
+			try {
+				if (configuration.loggingEnabled) L.i(LOG_LOAD_IMAGE_FROM_MEMORY_CACHE, memoryCacheKey);
+				listener.onLoadingStarted();
+				onBitmapDisplayed(bmp, imageView, options);
+				options.getDisplayer().display(bmp, imageView);
+				listener.onLoadingComplete(bmp);
+			} finally {
+				onDeliveryFinished(bmp);
+			}
 		} else {
 			listener.onLoadingStarted();
 
 			if (options.isShowStubImage()) {
 				imageView.setImageResource(options.getStubImage());
+				onBitmapDisplayed(null, imageView, options);
 			} else {
 				if (options.isResetViewBeforeLoading()) {
 					imageView.setImageBitmap(null);
+					onBitmapDisplayed(null, imageView, options);
 				}
 			}
 
 			initExecutorsIfNeed();
-			ImageLoadingInfo imageLoadingInfo = new ImageLoadingInfo(uri, imageView, targetSize, options, listener, getLockForUri(uri));
-			LoadAndDisplayImageTask displayImageTask = new LoadAndDisplayImageTask(configuration, imageLoadingInfo, new Handler());
-			boolean isImageCachedOnDisc = configuration.discCache.get(uri).exists();
-			if (isImageCachedOnDisc) {
-				cachedImageLoadingExecutor.submit(displayImageTask);
-			} else {
-				imageLoadingExecutor.submit(displayImageTask);
+			ImageSize targetSize = new ImageSize(targetWidth, targetHeight);
+			ImageLoadingInfo imageLoadingInfo = new ImageLoadingInfo(uri, memoryCacheKey, imageView, binding, targetSize, options, listener, getLockForUri(uri), priority, discCacheOnly, revalidation);
+			LoadAndDisplayImageTask displayImageTask;
+			synchronized (loadingTasks) {
+				LoadAndDisplayImageTask loadingTask = loadingTasks.get(memoryCacheKey);
+				if (loadingTask != null && loadingTask.attach(imageLoadingInfo)) {
+					if (configuration.loggingEnabled) L.i(LOG_ATTACH_TO_LOADING_TASK, memoryCacheKey);
+					if (priority.compareTo(loadingTask.getPriority()) < 0) {
+						raiseTaskPriority(loadingTask, imageLoadingInfo);
+					}
+					return;
+				}
+				displayImageTask = new LoadAndDisplayImageTask(configuration, imageLoadingInfo, handler);
+				loadingTasks.put(memoryCacheKey, displayImageTask);
 			}
+			submitDisplayTask(uri, displayImageTask, imageView.getContext());
+		}
+	}
+
+	/**
+	 * Tells bitmap pool (if it's used) which bitmap is displayed in ImageView now, so this bitmap won't be reused for
+	 * decoding of another image. Bitmaps loaded by {@link #loadImage(Context, String, ImageSize, DisplayImageOptions, ImageLoadingListener)
+	 * loadImage()} are passed to user code and are never reused.
+	 */
+	void onBitmapDisplayed(Bitmap bitmap, ImageView imageView, DisplayImageOptions options) {
+		BitmapPool bitmapPool = configuration.bitmapPool;
+		if (bitmapPool == null) return;
+
+		if (options.getDisplayer() instanceof FakeBitmapDisplayer) {
+			if (bitmap != null) {
+				bitmapPool.onBitmapHandedOut(bitmap);
+			}
+		} else {
+			bitmapPool.onBitmapDisplayed(imageView, bitmap);
 		}
 	}
 
+	/**
+	 * Tells bitmap pool (if it's used) that bitmap is being delivered to ImageView or user code, so bitmap won't be
+	 * reused for decoding of another image even if it's evicted from memory cache meanwhile.
+	 * 
+	 * @return <b>false</b> - if bitmap was already pooled (it mustn't be delivered then), <b>true</b> - otherwise
+	 */
+	boolean onDeliveryStarted(Bitmap bitmap) {
+		BitmapPool bitmapPool = configuration.bitmapPool;
+		return bitmapPool == null || bitmapPool.onDeliveryStarted(bitmap);
+	}
+
+	/** Tells bitmap pool (if it's used) that delivery of bitmap is finished */
+	void onDeliveryFinished(Bitmap bitmap) {
+		BitmapPool bitmapPool = configuration.bitmapPool;
+		if (bitmapPool != null) {
+			bitmapPool.onDeliveryFinished(bitmap);
+		}
+	}
+
+	/**
+	 * Submits display task to executor for disc cached images or to executor for other images. Disc cache is checked on
+	 * distributor thread so UI thread isn't blocked by file system access. Expired disc cached image is displayed and
+	 * it's revalidated in background (if disc cache supports it).
+	 */
+	private void submitDisplayTask(final String uri, final LoadAndDisplayImageTask displayImageTask, final Context context) {
+		taskDistributor.submit(new Runnable() {
+			@Override
+			public void run() {
+				// Task could be cancelled while it waited for distributor, then disc cache isn't checked
+				if (displayImageTask.cancelIfNotActual()) return;
+
+				boolean isImageCachedOnDisc = !displayImageTask.isRevalidation() && LoadAndDisplayImageTask.isImageCachedOnDisc(configuration.discCache, uri);
+				if (isImageCachedOnDisc) {
+					if (isImageExpiredOnDisc(uri)) {
+						handler.post(new Runnable() {
+							@Override
+							public void run() {
+								revalidateImage(context, uri);
+							}
+						});
+					}
+					displayImageTask.setDecodingStage();
+					passToDecodingStage(displayImageTask);
+				} else {
+					passToLoadingStage(displayImageTask);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Passes task to executor for loading stage
+	 * 
+	 * @return false - if executor was shut down
+	 */
+	boolean passToLoadingStage(LoadAndDisplayImageTask task) {
+		try {
+			imageLoadingExecutor.execute(task);
+			return true;
+		} catch (RejectedExecutionException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Passes task to executor for decoding stage
+	 * 
+	 * @return false - if executor was shut down
+	 */
+	boolean passToDecodingStage(LoadAndDisplayImageTask task) {
+		try {
+			decodingExecutor.execute(task);
+			return true;
+		} catch (RejectedExecutionException e) {
+			return false;
+		}
+	}
+
+	/** Raises priority of task. Task is re-queued with new priority if it's waiting in executor queue at this moment. */
+	private void raiseTaskPriority(LoadAndDisplayImageTask task, ImageLoadingInfo attachedLoadingInfo) {
+		if (!requeueWithPriority(task, attachedLoadingInfo)) {
+			// Task is running or is not queued yet. It can be queued (e.g. by distributor) with old priority while
+			// priority is updated, then queue order is broken. So task is re-queued if it got into queue meanwhile.
+			task.updatePriority(attachedLoadingInfo);
+			requeueWithPriority(task, attachedLoadingInfo);
+		}
+	}
+
+	/**
+	 * Removes task from executor queue, raises its priority and queues it again
+	 * 
+	 * @return false - if task wasn't in executor queue
+	 */
+	private boolean requeueWithPriority(LoadAndDisplayImageTask task, ImageLoadingInfo attachedLoadingInfo) {
+		ThreadPoolExecutor executor;
+		if (imageLoadingExecutor.remove(task)) {
+			executor = imageLoadingExecutor;
+		} else if (decodingExecutor.remove(task)) {
+			executor = decodingExecutor;
+		} else {
+			return false;
+		}
+		task.updatePriority(attachedLoadingInfo);
+		executor.execute(task);
+		return true;
+	}
+
+	/**
+	 * Detaches {@link ImageView} from task which loads image for incoming memory cache key. If the task isn't needed
+	 * by anybody else then it's removed from execution queue at once.
+	 */
+	private void cancelLoadingTask(String memoryCacheKey, ImageView imageView) {
+		if (memoryCacheKey == null) return;
+
+		LoadAndDisplayImageTask loadingTask;
+		synchronized (loadingTasks) {
+			loadingTask = loadingTasks.get(memoryCacheKey);
+			if (loadingTask == null || !loadingTask.detach(imageView)) return;
+
+			loadingTasks.remove(memoryCacheKey);
+		}
+		if (imageLoadingExecutor != null) {
+			imageLoadingExecutor.remove(loadingTask);
+		}
+		if (decodingExecutor != null) {
+			decodingExecutor.remove(loadingTask);
+		}
+		synchronized (pausedTasks) {
+			pausedTasks.remove(loadingTask);
+		}
+		handler.removeCallbacksAndMessages(loadingTask);
+	}
+
 	/**
 	 * Adds load image task to execution pool. Image will be returned with
 	 * {@link ImageLoadingListener#onLoadingComplete(Bitmap) callback}.<br />
@@ -334,26 +565,161 @@ public class ImageLoader {
 				.build();
 		}
 
+		ImageView fakeImage = createFakeImageView(context, minImageSize);
+		displayImage(uri, fakeImage, optionsWithFakeDisplayer, listener, LoadingPriority.NORMAL, false, false);
+	}
+
+	/**
+	 * Adds prefetch task to execution pool. Image is loaded in advance (e.g. for list items which will be shown soon)
+	 * with the lowest {@linkplain LoadingPriority#PREFETCH priority}, so prefetching doesn't delay loading of visible
+	 * images. If image is requested for displaying while it's prefetched then displaying request is attached to
+	 * prefetch task (if target sizes match) and task gets priority of displaying request.<br />
+	 * Repeated prefetch requests for the same URI are ignored while image is prefetched.<br />
+	 * <b>NOTE:</b> {@link #init(ImageLoaderConfiguration)} method must be called before this method call
+	 * 
+	 * @param context
+	 *            Application context (used for creation of fake {@link ImageView})
+	 * @param uri
+	 *            Image URI (i.e. "http://site.com/image.png", "file:///mnt/sdcard/image.png")
+	 * @param targetSize
+	 *            Size of ImageViews which will display image. Image is decoded for this size and is put into memory
+	 *            cache (if options allow it). If <b>null</b> - image is only cached on disc, it isn't decoded.
+	 * @param options
+	 *            {@linkplain DisplayImageOptions Display image options} which will be used for image displaying. If
+	 *            <b>null</b> - default display image options
+	 *            {@linkplain ImageLoaderConfiguration.Builder#defaultDisplayImageOptions(DisplayImageOptions) from
+	 *            configuration} will be used. Image is always cached on disc by prefetching.
+	 * @see #cancelPrefetch(String)
+	 */
+	public void prefetchImage(Context context, String uri, ImageSize targetSize, DisplayImageOptions options) {
+		if (configuration == null) {
+			throw new RuntimeException(ERROR_NOT_INIT);
+		}
+		if (uri == null || uri.length() == 0) return;
+		if (options == null) {
+			options = configuration.defaultDisplayImageOptions;
+		}
+
+		ImageView fakeImage;
+		synchronized (prefetchViews) {
+			if (prefetchViews.containsKey(uri)) return;
+
+			ImageSize fakeImageSize = targetSize;
+			if (fakeImageSize == null) {
+				fakeImageSize = new ImageSize(configuration.maxImageWidthForMemoryCache, configuration.maxImageHeightForMemoryCache);
+			}
+			fakeImage = createFakeImageView(context, fakeImageSize);
+			prefetchViews.put(uri, fakeImage);
+		}
+
+		DisplayImageOptions prefetchOptions = new DisplayImageOptions.Builder()
+			.cloneFrom(options)
+			.cacheOnDisc()
+			.displayer(fakeBitmapDisplayer)
+			.build();
+		displayImage(uri, fakeImage, prefetchOptions, new PrefetchListener(uri, fakeImage), LoadingPriority.PREFETCH, targetSize == null, false);
+	}
+
+	/**
+	 * Cancels prefetching of image (if it's prefetched at this moment). Requests for displaying which were attached to
+	 * prefetch task are not cancelled.
+	 * 
+	 * @param uri
+	 *            Image URI which was passed to {@link #prefetchImage(Context, String, ImageSize, DisplayImageOptions)}
+	 */
+	public void cancelPrefetch(String uri) {
+		ImageView fakeImage;
+		synchronized (prefetchViews) {
+			fakeImage = prefetchViews.remove(uri);
+		}
+		if (fakeImage != null) {
+			cancelDisplayTask(fakeImage);
+		}
+	}
+
+	private boolean isImageExpiredOnDisc(String uri) {
+		DiscCacheAware discCache = configuration.discCache;
+		return discCache instanceof RevalidatingDiscCacheAware && ((RevalidatingDiscCacheAware) discCache).isExpired(uri);
+	}
+
+	/**
+	 * Adds task which revalidates expired image in disc cache. Task has the lowest {@linkplain LoadingPriority#PREFETCH
+	 * priority}. Repeated requests for the same URI are ignored while image is revalidated.
+	 */
+	private void revalidateImage(Context context, String uri) {
+		String requestKey = REVALIDATION_KEY_PREFIX + uri;
+		ImageView fakeImage;
+		synchronized (prefetchViews) {
+			if (prefetchViews.containsKey(requestKey)) return;
+
+			fakeImage = createFakeImageView(context, new ImageSize(configuration.maxImageWidthForMemoryCache, configuration.maxImageHeightForMemoryCache));
+			prefetchViews.put(requestKey, fakeImage);
+		}
+
+		DisplayImageOptions revalidationOptions = new DisplayImageOptions.Builder()
+			.cacheOnDisc()
+			.displayer(fakeBitmapDisplayer)
+			.build();
+		displayImage(uri, fakeImage, revalidationOptions, new PrefetchListener(requestKey, fakeImage), LoadingPriority.PREFETCH, true, true);
+	}
+
+	private ImageView createFakeImageView(Context context, ImageSize imageSize) {
 		ImageView fakeImage = new ImageView(context);
-		fakeImage.setLayoutParams(new LayoutParams(minImageSize.getWidth(), minImageSize.getHeight()));
+		fakeImage.setLayoutParams(new LayoutParams(imageSize.getWidth(), imageSize.getHeight()));
 		fakeImage.setScaleType(ScaleType.CENTER_CROP);
+		return fakeImage;
+	}
+
+	/** Forgets finished prefetch (or revalidation) request, so image can be prefetched (or revalidated) again later */
+	private class PrefetchListener extends SimpleImageLoadingListener {
+
+		private final String requestKey;
+		private final ImageView fakeImage;
 
-		displayImage(uri, fakeImage, optionsWithFakeDisplayer, listener);
+		PrefetchListener(String requestKey, ImageView fakeImage) {
+			this.requestKey = requestKey;
+			this.fakeImage = fakeImage;
+		}
+
+		@Override
+		public void onLoadingComplete(Bitmap loadedImage) {
+			forget();
+		}
+
+		@Override
+		public void onLoadingFailed(FailReason failReason) {
+			forget();
+		}
+
+		@Override
+		public void onLoadingCancelled() {
+			forget();
+		}
+
+		private void forget() {
+			synchronized (prefetchViews) {
+				if (prefetchViews.get(requestKey) == fakeImage) {
+					prefetchViews.remove(requestKey);
+				}
+			}
+		}
 	}
 
 	private void initExecutorsIfNeed() {
 		if (imageLoadingExecutor == null || imageLoadingExecutor.isShutdown()) {
-			imageLoadingExecutor = createExecutor();
+			imageLoadingExecutor = createExecutor(configuration.threadPoolSize);
 		}
-		if (cachedImageLoadingExecutor == null || cachedImageLoadingExecutor.isShutdown()) {
-			cachedImageLoadingExecutor = createExecutor();
+		if (decodingExecutor == null || decodingExecutor.isShutdown()) {
+			decodingExecutor = createExecutor(configuration.decodingThreadPoolSize);
+		}
+		if (taskDistributor == null || taskDistributor.isShutdown()) {
+			taskDistributor = Executors.newSingleThreadExecutor(configuration.displayImageThreadFactory);
 		}
 	}
 
-	private ExecutorService createExecutor() {
-		boolean lifo = configuration.tasksProcessingType == QueueProcessingType.LIFO;
-		BlockingQueue<Runnable> taskQueue = lifo ? new LIFOLinkedBlockingDeque<Runnable>() : new LinkedBlockingQueue<Runnable>();
-		return new ThreadPoolExecutor(configuration.threadPoolSize, configuration.threadPoolSize, 0L, TimeUnit.MILLISECONDS, taskQueue,
+	private ThreadPoolExecutor createExecutor(int threadPoolSize) {
+		BlockingQueue<Runnable> taskQueue = new PriorityTaskQueue(configuration.tasksProcessingType);
+		return new ThreadPoolExecutor(threadPoolSize, threadPoolSize, 0L, TimeUnit.MILLISECONDS, taskQueue,
 				configuration.displayImageThreadFactory);
 	}
 
@@ -371,6 +737,9 @@ public class ImageLoader {
 	public void clearMemoryCache() {
 		if (configuration != null) {
 			configuration.memoryCache.clear();
+			if (configuration.bitmapPool != null) {
+				configuration.bitmapPool.clear();
+			}
 		}
 	}
 
@@ -393,7 +762,12 @@ public class ImageLoader {
 
 	/** Returns URI of image which is loading at this moment into passed {@link ImageView} */
 	public String getLoadingUriForView(ImageView imageView) {
-		return cacheKeysForImageViews.get(imageView.hashCode());
+		BindingStripe stripe = getBindingStripe(imageView);
+		ImageViewBinding binding;
+		synchronized (stripe) {
+			binding = stripe.get(imageView);
+		}
+		return binding == null ? null : binding.getMemoryCacheKey();
 	}
 
 	/**
@@ -403,37 +777,159 @@ public class ImageLoader {
 	 *            {@link ImageView} for which display task will be cancelled
 	 */
 	public void cancelDisplayTask(ImageView imageView) {
-		cacheKeysForImageViews.remove(imageView.hashCode());
+		cancelLoadingTask(getBinding(imageView).unbind(), imageView);
 	}
 
 	/**
 	 * Pause ImageLoader. All new "load&display" tasks won't be executed until ImageLoader is {@link #resume() resumed}.<br />
-	 * Already running tasks are not paused.
+	 * Already running tasks are not paused. Waiting tasks are held by ImageLoader and don't occupy executor threads.
 	 */
 	public void pause() {
-		paused.set(true);
+		pause(PausePolicy.ALL);
+	}
+
+	/**
+	 * Pause ImageLoader. New "load&display" tasks which are defined by {@linkplain PausePolicy pause policy} won't be
+	 * executed until ImageLoader is {@link #resume() resumed}, other tasks keep loading images.<br />
+	 * Already running tasks are not paused. Waiting tasks are held by ImageLoader and don't occupy executor threads.
+	 */
+	public void pause(PausePolicy pausePolicy) {
+		if (pausePolicy == null) throw new IllegalArgumentException("pausePolicy must not be null");
+
+		List<LoadAndDisplayImageTask> tasksToRecheck;
+		synchronized (pausedTasks) {
+			if (this.pausePolicy == pausePolicy) return;
+
+			this.pausePolicy = pausePolicy;
+			// Held tasks will be checked against new policy
+			tasksToRecheck = new ArrayList<LoadAndDisplayImageTask>(pausedTasks);
+			pausedTasks.clear();
+		}
+		for (LoadAndDisplayImageTask task : tasksToRecheck) {
+			resubmitTask(task);
+		}
 	}
 
 	/** Resumes waiting "load&display" tasks */
 	public void resume() {
-		synchronized (paused) {
-			paused.set(false);
-			paused.notifyAll();
+		List<LoadAndDisplayImageTask> tasksToResume;
+		synchronized (pausedTasks) {
+			pausePolicy = null;
+			tasksToResume = new ArrayList<LoadAndDisplayImageTask>(pausedTasks);
+			pausedTasks.clear();
+		}
+		for (LoadAndDisplayImageTask task : tasksToResume) {
+			resubmitTask(task);
+		}
+	}
+
+	/**
+	 * Holds task until ImageLoader is resumed if ImageLoader is paused now and task should be held according to
+	 * {@linkplain PausePolicy pause policy}
+	 * 
+	 * @return true - if task was held
+	 */
+	boolean holdIfPaused(LoadAndDisplayImageTask task) {
+		if (pausePolicy == null) return false;
+
+		synchronized (pausedTasks) {
+			if (pausePolicy == null || !shouldHold(task, pausePolicy)) return false;
+
+			pausedTasks.add(task);
+			return true;
+		}
+	}
+
+	private boolean shouldHold(LoadAndDisplayImageTask task, PausePolicy pausePolicy) {
+		switch (pausePolicy) {
+			case NETWORK:
+				return isNetworkLoading(task);
+			case NETWORK_AND_LARGE_DECODES:
+				return isNetworkLoading(task) || isLargeImage(task.getTargetSize());
+			default:
+				return true;
+		}
+	}
+
+	/**
+	 * Returns true if task loads image from network. Image URI is checked, so loading of local images isn't held.
+	 * Image of network URI is loaded from network only at loading stage, decoding stage decodes disc cached image.
+	 */
+	private boolean isNetworkLoading(LoadAndDisplayImageTask task) {
+		return task.isNetworkImage() && !task.isDecodingStage();
+	}
+
+	/** Returns true if image size is larger than a quarter of screen */
+	private boolean isLargeImage(ImageSize targetSize) {
+		DisplayMetrics displayMetrics = Resources.getSystem().getDisplayMetrics();
+		long screenArea = (long) displayMetrics.widthPixels * displayMetrics.heightPixels;
+		return (long) targetSize.getWidth() * targetSize.getHeight() * 4 > screenArea;
+	}
+
+	/**
+	 * Resubmits task to executor after delay. Task doesn't occupy any thread during delay.
+	 * 
+	 * @return true - if task was scheduled
+	 */
+	boolean delayTask(final LoadAndDisplayImageTask task, long delayInMillis) {
+		Runnable resubmission = new Runnable() {
+			@Override
+			public void run() {
+				resubmitTask(task);
+			}
+		};
+		// Task is used as token so scheduled resubmission can be cancelled
+		return handler.postAtTime(resubmission, task, SystemClock.uptimeMillis() + delayInMillis);
+	}
+
+	private void resubmitTask(LoadAndDisplayImageTask task) {
+		if (task.isDecodingStage()) {
+			passToDecodingStage(task);
+		} else {
+			passToLoadingStage(task);
 		}
 	}
 
-	/** Stops all running display image tasks, discards all other scheduled tasks */
+	/**
+	 * Stops all running display image tasks, discards all other scheduled tasks. Listeners of all unfinished requests
+	 * get {@link ImageLoadingListener#onLoadingCancelled()} event.
+	 */
 	public void stop() {
+		List<Runnable> queuedTasks = new ArrayList<Runnable>();
+		if (taskDistributor != null) {
+			taskDistributor.shutdownNow();
+		}
 		if (imageLoadingExecutor != null) {
-			imageLoadingExecutor.shutdownNow();
+			queuedTasks.addAll(imageLoadingExecutor.shutdownNow());
+		}
+		if (decodingExecutor != null) {
+			queuedTasks.addAll(decodingExecutor.shutdownNow());
 		}
-		if (cachedImageLoadingExecutor != null) {
-			cachedImageLoadingExecutor.shutdownNow();
+		List<LoadAndDisplayImageTask> tasks;
+		synchronized (loadingTasks) {
+			tasks = new ArrayList<LoadAndDisplayImageTask>(loadingTasks.values());
+			loadingTasks.clear();
+		}
+		// Requests of discarded tasks get onLoadingCancelled() event (running tasks fire it when they're interrupted)
+		for (Runnable queuedTask : queuedTasks) {
+			if (queuedTask instanceof LoadAndDisplayImageTask) {
+				((LoadAndDisplayImageTask) queuedTask).cancel();
+			}
+		}
+		for (LoadAndDisplayImageTask task : tasks) {
+			handler.removeCallbacksAndMessages(task); // delayed resubmission
+			task.cancel();
+		}
+		synchronized (pausedTasks) {
+			pausedTasks.clear();
+		}
+		synchronized (prefetchViews) {
+			prefetchViews.clear();
 		}
 	}
 
 	/**
-	 * Defines image size for loading at memory (for memory economy) by {@link ImageView} parameters.<br />
+	 * Defines image width for loading at memory (for memory economy) by {@link ImageView} parameters.<br />
 	 * Size computing algorithm:<br />
 	 * 1) Get <b>layout_width</b> and <b>layout_height</b>. If both of them haven't exact value then go to step #2.</br>
 	 * 2) Get <b>maxWidth</b> and <b>maxHeight</b>. If both of them are not set then go to step #3.<br />
@@ -441,29 +937,28 @@ public class ImageLoader {
 	 * them are not set then go to step #3.<br />
 	 * 4) Get device screen dimensions.
 	 */
-	private ImageSize getImageSizeScaleTo(ImageView imageView) {
-		DisplayMetrics displayMetrics = imageView.getContext().getResources().getDisplayMetrics();
-
-		LayoutParams params = imageView.getLayoutParams();
-		int width = params.width; // Get layout width parameter
-		if (width <= 0) width = getFieldValue(imageView, "mMaxWidth"); // Check maxWidth parameter
+	private int getImageWidthScaleTo(ImageView imageView) {
+		int width = imageView.getLayoutParams().width; // Get layout width parameter
+		if (width <= 0) width = getFieldValue(imageView, MAX_WIDTH_FIELD); // Check maxWidth parameter
 		if (width <= 0) width = configuration.maxImageWidthForMemoryCache;
-		if (width <= 0) width = displayMetrics.widthPixels;
+		if (width <= 0) width = imageView.getContext().getResources().getDisplayMetrics().widthPixels;
+		return width;
+	}
 
-		int height = params.height; // Get layout height parameter
-		if (height <= 0) height = getFieldValue(imageView, "mMaxHeight"); // Check maxHeight parameter
+	/** Defines image height for loading at memory by {@link ImageView} parameters, see {@link #getImageWidthScaleTo(ImageView)} */
+	private int getImageHeightScaleTo(ImageView imageView) {
+		int height = imageView.getLayoutParams().height; // Get layout height parameter
+		if (height <= 0) height = getFieldValue(imageView, MAX_HEIGHT_FIELD); // Check maxHeight parameter
 		if (height <= 0) height = configuration.maxImageHeightForMemoryCache;
-		if (height <= 0) height = displayMetrics.heightPixels;
-
-		return new ImageSize(width, height);
+		if (height <= 0) height = imageView.getContext().getResources().getDisplayMetrics().heightPixels;
+		return height;
 	}
 
-	private int getFieldValue(Object object, String fieldName) {
+	private int getFieldValue(Object object, Field field) {
 		int value = 0;
+		if (field == null) return value;
 		try {
-			Field field = ImageView.class.getDeclaredField(fieldName);
-			field.setAccessible(true);
-			int fieldValue = (Integer) field.get(object);
+			int fieldValue = field.getInt(object);
 			if (fieldValue > 0 && fieldValue < Integer.MAX_VALUE) {
 				value = fieldValue;
 			}
@@ -473,6 +968,50 @@ public class ImageLoader {
 		return value;
 	}
 
+	private static Field getImageViewField(String fieldName) {
+		try {
+			Field field = ImageView.class.getDeclaredField(fieldName);
+			field.setAccessible(true);
+			return field;
+		} catch (Exception e) {
+			L.e(e);
+			return null;
+		}
+	}
+
+	/**
+	 * Returns memory cache key for image URI and size. Recently generated key is reused if it's possible, so repeated
+	 * displaying of the same image doesn't allocate new key.
+	 */
+	private String getMemoryCacheKey(String uri, int width, int height) {
+		int index = uri.hashCode() & (RECENT_CACHE_KEYS_COUNT - 1);
+		String key = recentCacheKeys[index];
+		if (!MemoryCacheUtil.isKeyFor(key, uri, width, height)) {
+			key = MemoryCacheUtil.generateKey(uri, width, height);
+			recentCacheKeys[index] = key;
+		}
+		return key;
+	}
+
+	/** Returns binding of ImageView to image, creates binding if ImageView hasn't it yet */
+	private ImageViewBinding getBinding(ImageView imageView) {
+		BindingStripe stripe = getBindingStripe(imageView);
+		synchronized (stripe) {
+			ImageViewBinding binding = stripe.get(imageView);
+			if (binding == null) {
+				binding = new ImageViewBinding();
+				stripe.put(imageView, binding);
+			}
+			return binding;
+		}
+	}
+
+	private BindingStripe getBindingStripe(ImageView imageView) {
+		int hash = System.identityHashCode(imageView);
+		hash ^= hash >>> 16;
+		return bindingStripes[hash & (BINDING_STRIPE_COUNT - 1)];
+	}
+
 	private ReentrantLock getLockForUri(String uri) {
 		ReentrantLock lock = uriLocks.get(uri);
 		if (lock == null) {
@@ -482,7 +1021,16 @@ public class ImageLoader {
 		return lock;
 	}
 
-	AtomicBoolean getPause() {
-		return paused;
+	/** Removes finished task from loading tasks so new requests for the image won't be attached to it */
+	void removeLoadingTask(String memoryCacheKey, LoadAndDisplayImageTask task) {
+		synchronized (loadingTasks) {
+			if (loadingTasks.get(memoryCacheKey) == task) {
+				loadingTasks.remove(memoryCacheKey);
+			}
+		}
+	}
+
+	/** Part of ImageView bindings (ImageViews are referenced weakly), it's guarded by itself */
+	private static final class BindingStripe extends WeakHashMap<ImageView, ImageViewBinding> {
 	}
 }
@@ -9,7 +9,11 @@ import android.graphics.Bitmap.CompressFormat;
 import com.nostra13.universalimageloader.cache.disc.DiscCacheAware;
 import com.nostra13.universalimageloader.cache.disc.impl.UnlimitedDiscCache;
 import com.nostra13.universalimageloader.cache.disc.naming.FileNameGenerator;
+import com.nostra13.universalimageloader.cache.memory.BitmapPool;
+import com.nostra13.universalimageloader.cache.memory.LimitedMemoryCache;
 import com.nostra13.universalimageloader.cache.memory.MemoryCacheAware;
+import com.nostra13.universalimageloader.cache.memory.impl.LFUMemoryCache;
+import com.nostra13.universalimageloader.cache.memory.impl.LRUMemoryCache;
 import com.nostra13.universalimageloader.core.assist.FailReason;
 import com.nostra13.universalimageloader.core.assist.ImageLoadingListener;
 import com.nostra13.universalimageloader.core.assist.QueueProcessingType;
@@ -43,10 +47,13 @@ public final class ImageLoaderConfiguration {
 	final int imageQualityForDiscCache;
     /** 线程池大小 */
 	final int threadPoolSize;
+	final int decodingThreadPoolSize;
 	final boolean handleOutOfMemory;
+	final boolean syncDiscCacheWrites;
 	final QueueProcessingType tasksProcessingType;
 
 	final MemoryCacheAware<String, Bitmap> memoryCache;
+	final BitmapPool bitmapPool;
 	final DiscCacheAware discCache;
 	final ImageDownloader downloader;
 	final DisplayImageOptions defaultDisplayImageOptions;
@@ -61,9 +68,12 @@ public final class ImageLoaderConfiguration {
 		imageCompressFormatForDiscCache = builder.imageCompressFormatForDiscCache;
 		imageQualityForDiscCache = builder.imageQualityForDiscCache;
 		threadPoolSize = builder.threadPoolSize;
+		decodingThreadPoolSize = builder.decodingThreadPoolSize;
 		handleOutOfMemory = builder.handleOutOfMemory;
+		syncDiscCacheWrites = builder.syncDiscCacheWrites;
 		discCache = builder.discCache;
 		memoryCache = builder.memoryCache;
+		bitmapPool = builder.bitmapPool;
 		defaultDisplayImageOptions = builder.defaultDisplayImageOptions;
 		loggingEnabled = builder.loggingEnabled;
 		downloader = builder.downloader;
@@ -87,11 +97,14 @@ public final class ImageLoaderConfiguration {
 	 * <li>maxImageWidthForDiscCache = unlimited</li>
 	 * <li>maxImageHeightForDiscCache = unlimited</li>
 	 * <li>threadPoolSize = {@link Builder#DEFAULT_THREAD_POOL_SIZE this}</li>
+	 * <li>decodingThreadPoolSize = count of available processors</li>
 	 * <li>threadPriority = {@link Builder#DEFAULT_THREAD_PRIORITY this}</li>
 	 * <li>allow to cache different sizes of image in memory</li>
-	 * <li>memoryCache = {@link UsingFreqLimitedCache} with limited memory cache size (
+	 * <li>memoryCache = {@link LFUMemoryCache} with limited memory cache size (
 	 * {@link Builder#DEFAULT_MEMORY_CACHE_SIZE this} bytes)</li>
+	 * <li>bitmap reuse disabled</li>
 	 * <li>discCache = {@link UnlimitedDiscCache}</li>
+	 * <li>disc cache writes aren't synced with storage</li>
 	 * <li>imageDownloader = {@link ImageDownloader#createDefault()}</li>
 	 * <li>discCacheFileNameGenerator = {@link FileNameGenerator#createDefault()}</li>
 	 * <li>defaultDisplayImageOptions = {@link DisplayImageOptions#createSimple() Simple options}</li>
@@ -116,6 +129,7 @@ public final class ImageLoaderConfiguration {
 		private static final String WARNING_OVERLAP_DISC_CACHE_FILE_COUNT = "This method's call overlaps discCacheFileCount() method call";
 		private static final String WARNING_OVERLAP_DISC_CACHE_FILE_NAME_GENERATOR = "This method's call overlaps discCacheFileNameGenerator() method call";
 		private static final String WARNING_DISC_CACHE_ALREADY_SET = "You already have set disc cache. This method call will make no effect.";
+		private static final String WARNING_BITMAP_REUSE_NOT_SUPPORTED = "Bitmap reuse isn't supported on this Android version (3.0+ is needed). Bitmap pool won't be used.";
 
 		/** {@value} */
 		public static final int DEFAULT_THREAD_POOL_SIZE = 3;
@@ -134,16 +148,20 @@ public final class ImageLoaderConfiguration {
 		private int imageQualityForDiscCache = 0;
 
 		private int threadPoolSize = DEFAULT_THREAD_POOL_SIZE;
+		private int decodingThreadPoolSize = Runtime.getRuntime().availableProcessors();
 		private int threadPriority = DEFAULT_THREAD_PRIORITY;
 		private boolean denyCacheImageMultipleSizesInMemory = false;
 		private boolean handleOutOfMemory = true;
+		private boolean syncDiscCacheWrites = false;
 		private QueueProcessingType tasksProcessingType = QueueProcessingType.FIFO;
 
 		private int memoryCacheSize = DEFAULT_MEMORY_CACHE_SIZE;
-		private int discCacheSize = 0;
+		private long discCacheSize = 0;
 		private int discCacheFileCount = 0;
+		private int bitmapPoolSize = 0;
 
 		private MemoryCacheAware<String, Bitmap> memoryCache = null;
+		private BitmapPool bitmapPool = null;
 		private DiscCacheAware discCache = null;
 		private FileNameGenerator discCacheFileNameGenerator = null;
 		private ImageDownloader downloader = null;
@@ -195,7 +213,8 @@ public final class ImageLoaderConfiguration {
 		}
 
 		/**
-		 * Sets thread pool size for image display tasks.<br />
+		 * Sets thread pool size for image display tasks. These threads download images (and decode them if images
+		 * aren't cached on disc).<br />
 		 * Default value - {@link #DEFAULT_THREAD_POOL_SIZE this}
 		 * */
 		public Builder threadPoolSize(int threadPoolSize) {
@@ -203,6 +222,18 @@ public final class ImageLoaderConfiguration {
 			return this;
 		}
 
+		/**
+		 * Sets thread pool size for decoding of disc cached images. Decoding threads don't wait for network so they can
+		 * keep CPU busy while images are downloading.<br />
+		 * Default value - count of available processors
+		 * */
+		public Builder decodingThreadPoolSize(int decodingThreadPoolSize) {
+			if (decodingThreadPoolSize <= 0) throw new IllegalArgumentException("decodingThreadPoolSize must be a positive number");
+
+			this.decodingThreadPoolSize = decodingThreadPoolSize;
+			return this;
+		}
+
 		/**
 		 * Sets the priority for image loading threads. Must be <b>NOT</b> greater than {@link Thread#MAX_PRIORITY} or
 		 * less than {@link Thread#MIN_PRIORITY}<br />
@@ -246,7 +277,20 @@ public final class ImageLoaderConfiguration {
 		}
 
 		/**
-		 * Sets type of queue processing for tasks for loading and displaying images.<br />
+		 * Images are written into disc cache through temporary files, so partially written images are never seen in
+		 * cache. This method enables syncing of written images with storage device before they're moved into cache. It
+		 * protects cached images from corruption by power loss but makes caching slower.<br />
+		 * By default: written images aren't synced.
+		 */
+		public Builder syncDiscCacheWrites() {
+			this.syncDiscCacheWrites = true;
+			return this;
+		}
+
+		/**
+		 * Sets type of queue processing for tasks for loading and displaying images. Tasks are ordered by
+		 * {@linkplain com.nostra13.universalimageloader.core.assist.LoadingPriority priority} first, so this type
+		 * defines order of tasks with equal priority.<br />
 		 * Default value - {@link QueueProcessingType#FIFO}
 		 */
 		public Builder tasksProcessingOrder(QueueProcessingType tasksProcessingType) {
@@ -258,7 +302,7 @@ public final class ImageLoaderConfiguration {
 		 * Sets maximum memory cache size for {@link android.graphics.Bitmap bitmaps} (in bytes).<br />
 		 * Default value - {@link #DEFAULT_MEMORY_CACHE_SIZE this}<br />
 		 * <b>NOTE:</b> If you use this method then
-		 * {@link com.nostra13.universalimageloader.cache.memory.impl.UsingFreqLimitedMemoryCache UsingFreqLimitedCache}
+		 * {@link com.nostra13.universalimageloader.cache.memory.impl.LFUMemoryCache LFUMemoryCache}
 		 * will be used as memory cache. You can use {@link #memoryCache(MemoryCacheAware)} method for introduction your
 		 * own implementation of {@link MemoryCacheAware}.
 		 */
@@ -272,8 +316,8 @@ public final class ImageLoaderConfiguration {
 
 		/**
 		 * Sets memory cache for {@link android.graphics.Bitmap bitmaps}.<br />
-		 * Default value - {@link com.nostra13.universalimageloader.cache.memory.impl.UsingFreqLimitedMemoryCache
-		 * UsingFreqLimitedCache} with limited memory cache size (size = {@link #DEFAULT_MEMORY_CACHE_SIZE this})<br />
+		 * Default value - {@link com.nostra13.universalimageloader.cache.memory.impl.LFUMemoryCache LFUMemoryCache}
+		 * with limited memory cache size (size = {@link #DEFAULT_MEMORY_CACHE_SIZE this})<br />
 		 * <b>NOTE:</b> You can use {@link #memoryCacheSize(int)} method instead of this method to simplify memory cache
 		 * tuning.
 		 */
@@ -284,6 +328,27 @@ public final class ImageLoaderConfiguration {
 			return this;
 		}
 
+		/**
+		 * Enables reuse of bitmaps evicted from memory cache for decoding of new images (on Android 3.0 and higher). Such
+		 * bitmaps are kept in {@link BitmapPool} until they are reused. It decreases count of bitmap allocations and
+		 * garbage collections during list scrolling.<br />
+		 * By default: bitmaps aren't reused.<br />
+		 * <b>NOTE:</b> Bitmap pool is fed by memory cache only if memory cache is created by default or it's a
+		 * {@link LimitedMemoryCache}, {@link LRUMemoryCache} or {@link LFUMemoryCache}.<br />
+		 * <b>NOTE:</b> Don't keep bitmaps passed to {@link ImageLoadingListener#onLoadingComplete(Bitmap)} by
+		 * {@link ImageLoader#displayImage(String, android.widget.ImageView) displayImage()} calls if you enable bitmap
+		 * reuse. Such bitmaps can be reused for another image when they aren't displayed anymore.
+		 * 
+		 * @param bitmapPoolSize
+		 *            Maximum size of pooled bitmaps (in bytes)
+		 */
+		public Builder bitmapPoolSize(int bitmapPoolSize) {
+			if (bitmapPoolSize <= 0) throw new IllegalArgumentException("bitmapPoolSize must be a positive number");
+
+			this.bitmapPoolSize = bitmapPoolSize;
+			return this;
+		}
+
 		/**
 		 * Sets maximum disc cache size for images (in bytes).<br />
 		 * By default: disc cache is unlimited.<br />
@@ -292,7 +357,7 @@ public final class ImageLoaderConfiguration {
 		 * will be used as disc cache. You can use {@link #discCache(DiscCacheAware)} method for introduction your own
 		 * implementation of {@link DiscCacheAware}
 		 */
-		public Builder discCacheSize(int maxCacheSize) {
+		public Builder discCacheSize(long maxCacheSize) {
 			if (maxCacheSize <= 0) throw new IllegalArgumentException("maxCacheSize must be a positive number");
 			if (discCache != null) L.w(WARNING_DISC_CACHE_ALREADY_SET);
 			if (discCacheFileCount > 0) L.w(WARNING_OVERLAP_DISC_CACHE_FILE_COUNT);
@@ -389,8 +454,23 @@ public final class ImageLoaderConfiguration {
 				}
 				discCache = DefaultConfigurationFactory.createDiscCache(context, discCacheFileNameGenerator, discCacheSize, discCacheFileCount);
 			}
+			if (bitmapPoolSize > 0) {
+				if (ImageDecoder.isBitmapReuseSupported()) {
+					bitmapPool = new BitmapPool(bitmapPoolSize);
+				} else {
+					L.w(WARNING_BITMAP_REUSE_NOT_SUPPORTED);
+				}
+			}
 			if (memoryCache == null) {
-				memoryCache = DefaultConfigurationFactory.createMemoryCache(memoryCacheSize, denyCacheImageMultipleSizesInMemory);
+				memoryCache = DefaultConfigurationFactory.createMemoryCache(memoryCacheSize, denyCacheImageMultipleSizesInMemory, bitmapPool);
+			} else if (bitmapPool != null && memoryCache instanceof LimitedMemoryCache) {
+				@SuppressWarnings("unchecked")
+				LimitedMemoryCache<String, Bitmap> limitedMemoryCache = (LimitedMemoryCache<String, Bitmap>) memoryCache;
+				limitedMemoryCache.setEvictionListener(bitmapPool);
+			} else if (bitmapPool != null && memoryCache instanceof LRUMemoryCache) {
+				((LRUMemoryCache) memoryCache).setEvictionListener(bitmapPool);
+			} else if (bitmapPool != null && memoryCache instanceof LFUMemoryCache) {
+				((LFUMemoryCache) memoryCache).setEvictionListener(bitmapPool);
 			}
 			if (downloader == null) {
 				downloader = DefaultConfigurationFactory.createImageDownloader();
@@ -7,6 +7,7 @@ import android.widget.ImageView;
 
 import com.nostra13.universalimageloader.core.assist.ImageLoadingListener;
 import com.nostra13.universalimageloader.core.assist.ImageSize;
+import com.nostra13.universalimageloader.core.assist.LoadingPriority;
 import com.nostra13.universalimageloader.core.assist.MemoryCacheUtil;
 
 /**
@@ -22,18 +23,28 @@ final class ImageLoadingInfo {
 	final String uri;
 	final String memoryCacheKey;
 	final ImageView imageView;
+	final ImageViewBinding imageViewBinding;
 	final ImageSize targetSize;
 	final DisplayImageOptions options;
 	final ImageLoadingListener listener;
 	final ReentrantLock loadFromUriLock;
+	final LoadingPriority priority;
+	/** Whether image should be only cached on disc (without decoding) */
+	final boolean discCacheOnly;
+	/** Whether expired image in disc cache should be revalidated (image is cached on disc only then) */
+	final boolean revalidation;
 
-	public ImageLoadingInfo(String uri, ImageView imageView, ImageSize targetSize, DisplayImageOptions options, ImageLoadingListener listener, ReentrantLock loadFromUriLock) {
+	public ImageLoadingInfo(String uri, String memoryCacheKey, ImageView imageView, ImageViewBinding imageViewBinding, ImageSize targetSize, DisplayImageOptions options, ImageLoadingListener listener, ReentrantLock loadFromUriLock, LoadingPriority priority, boolean discCacheOnly, boolean revalidation) {
 		this.uri = Uri.encode(uri, "@#&=*+-_.,:!?()/~'%");
 		this.imageView = imageView;
+		this.imageViewBinding = imageViewBinding;
 		this.targetSize = targetSize;
 		this.options = options;
 		this.listener = listener;
 		this.loadFromUriLock = loadFromUriLock;
-		memoryCacheKey = MemoryCacheUtil.generateKey(uri, targetSize);
+		this.priority = priority;
+		this.discCacheOnly = discCacheOnly;
+		this.revalidation = revalidation;
+		this.memoryCacheKey = memoryCacheKey;
 	}
 }
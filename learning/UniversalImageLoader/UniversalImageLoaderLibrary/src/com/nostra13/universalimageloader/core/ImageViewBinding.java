@@ -0,0 +1,32 @@
+package com.nostra13.universalimageloader.core;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import android.widget.ImageView;
+
+/**
+ * Binding of {@link ImageView} to image which should be displayed in it at this moment (by memory cache key). Binding
+ * is created once per ImageView. Tasks keep reference to binding so they can check whether their ImageViews were reused
+ * for another image without locks.
+ * 
+ * @see ImageLoadingInfo
+ */
+final class ImageViewBinding {
+
+	private final AtomicReference<String> memoryCacheKey = new AtomicReference<String>();
+
+	/** Returns memory cache key of image which should be displayed in ImageView (<b>null</b> - if there is no such image) */
+	String getMemoryCacheKey() {
+		return memoryCacheKey.get();
+	}
+
+	/** Binds ImageView to image, returns previous memory cache key */
+	String bind(String memoryCacheKey) {
+		return this.memoryCacheKey.getAndSet(memoryCacheKey);
+	}
+
+	/** Unbinds ImageView from any image, returns previous memory cache key */
+	String unbind() {
+		return memoryCacheKey.getAndSet(null);
+	}
+}
@@ -1,14 +1,18 @@
 package com.nostra13.universalimageloader.core;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.SequenceInputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.locks.ReentrantLock;
 
 import android.graphics.Bitmap;
@@ -16,19 +20,33 @@ import android.os.Handler;
 import android.os.SystemClock;
 import android.widget.ImageView;
 
+import com.nostra13.universalimageloader.cache.disc.BaseDiscCache;
 import com.nostra13.universalimageloader.cache.disc.DiscCacheAware;
+import com.nostra13.universalimageloader.cache.disc.PackedDiscCacheAware;
+import com.nostra13.universalimageloader.cache.disc.RevalidatingDiscCacheAware;
+import com.nostra13.universalimageloader.cache.memory.MemoryCacheAware;
+import com.nostra13.universalimageloader.cache.memory.PeekableMemoryCacheAware;
 import com.nostra13.universalimageloader.core.assist.FailReason;
 import com.nostra13.universalimageloader.core.assist.ImageLoadingListener;
 import com.nostra13.universalimageloader.core.assist.ImageScaleType;
 import com.nostra13.universalimageloader.core.assist.ImageSize;
+import com.nostra13.universalimageloader.core.assist.LoadingPriority;
+import com.nostra13.universalimageloader.core.assist.MemoryCacheUtil;
 import com.nostra13.universalimageloader.core.assist.ViewScaleType;
+import com.nostra13.universalimageloader.core.download.CacheValidators;
 import com.nostra13.universalimageloader.core.download.ImageDownloader;
+import com.nostra13.universalimageloader.utils.AtomicFile;
 import com.nostra13.universalimageloader.utils.FileUtils;
 import com.nostra13.universalimageloader.utils.L;
 
 /**
  * Presents load'n'display image task. Used to load image from Internet or file system, decode it to {@link Bitmap}, and
- * display it in {@link ImageView} through {@link DisplayBitmapTask}.
+ * display it in {@link ImageView} through {@link DisplayBitmapTask}.<br />
+ * Task is executed in two stages: loading stage (image downloading into disc cache) is executed by executor for
+ * loading, decoding stage (image decoding from disc cache, resizing for disc cache and caching in memory) is executed
+ * by executor for decoding. So slow downloads don't hold threads which could decode cached images.<br />
+ * Other requests for the same image (the same memory cache key) can be {@linkplain #attach(ImageLoadingInfo) attached}
+ * to the task while it's loading. Then loaded image is delivered to all attached requests.
  * 
  * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
  * @see ImageLoaderConfiguration
@@ -37,34 +55,63 @@ import com.nostra13.universalimageloader.utils.L;
 final class LoadAndDisplayImageTask implements Runnable {
 
 	private static final String LOG_WAITING_FOR_RESUME = "ImageLoader is paused. Waiting...  [%s]";
-	private static final String LOG_RESUME_AFTER_PAUSE = ".. Resume loading [%s]";
 	private static final String LOG_DELAY_BEFORE_LOADING = "Delay %d ms before loading...  [%s]";
 	private static final String LOG_START_DISPLAY_IMAGE_TASK = "Start display image task [%s]";
+	private static final String LOG_START_DECODING_STAGE = "Start decoding of cached image [%s]";
 	private static final String LOG_WAITING_FOR_IMAGE_LOADED = "Image already is loading. Waiting... [%s]";
 	private static final String LOG_GET_IMAGE_FROM_MEMORY_CACHE_AFTER_WAITING = "...Get cached bitmap from memory after waiting. [%s]";
 	private static final String LOG_LOAD_IMAGE_FROM_INTERNET = "Load image from Internet [%s]";
 	private static final String LOG_LOAD_IMAGE_FROM_DISC_CACHE = "Load image from disc cache [%s]";
 	private static final String LOG_CACHE_IMAGE_IN_MEMORY = "Cache image in memory [%s]";
 	private static final String LOG_CACHE_IMAGE_ON_DISC = "Cache image on disc [%s]";
+	private static final String LOG_IMAGE_CACHED_ON_DISC = "Image is cached on disc, decoding isn't needed [%s]";
+	private static final String LOG_REVALIDATE_IMAGE_ON_DISC = "Revalidate expired image in disc cache [%s]";
+	private static final String LOG_IMAGE_NOT_MODIFIED = "Image wasn't modified, disc cache age is renewed [%s]";
 	private static final String LOG_TASK_CANCELLED = "ImageView is reused for another image. Task is cancelled. [%s]";
 	private static final String LOG_TASK_INTERRUPTED = "Task was interrupted [%s]";
 
 	private static final int ATTEMPT_COUNT_TO_DECODE_BITMAP = 3;
+
+	private static final String URI_SCHEME_HTTP = "http://";
+	private static final String URI_SCHEME_HTTPS = "https://";
+
 	private static final int BUFFER_SIZE = 8 * 1024; // 8 Kb
 
 	private final ImageLoaderConfiguration configuration;
 	private final ImageLoadingInfo imageLoadingInfo;
 	private final Handler handler;
 
+	/** Infos of all requests which wait for result of this task. Task can't be attached to after it's finished. */
+	private final List<ImageLoadingInfo> attachedLoadingInfos = new ArrayList<ImageLoadingInfo>();
+	private boolean finished = false;
+
+	/** The highest priority of attached requests. Can be changed only while task is out of executor queue. */
+	private volatile LoadingPriority priority;
+	/** Order number of task in executor queue */
+	private long queueSequence;
+
+	/** Whether task is at decoding stage (decodes image from disc cache) or at loading stage (downloads image) */
+	private boolean decodingStage = false;
+	private boolean started = false;
+	/** Whether image was downloaded into disc cache by this task */
+	private boolean downloaded = false;
+	/** Validators of downloaded image (if disc cache keeps them) */
+	private CacheValidators validators;
+	/** Whether downloaded image was put right into packed disc cache (without file) */
+	private boolean packedOnDisc = false;
+	/** Bitmap which is delivered by current run of task. It isn't pooled until run is finished. */
+	private Bitmap deliveredBitmap;
+
 	// Helper references
 	private final ImageDownloader downloader;
 	private final boolean loggingEnabled;
 	private final String uri;
 	private final String memoryCacheKey;
-	private final ImageView imageView;
 	private final ImageSize targetSize;
 	private final DisplayImageOptions options;
-	private final ImageLoadingListener listener;
+	private final ViewScaleType viewScaleType;
+	private final boolean discCacheOnly;
+	private final boolean revalidation;
 
 	public LoadAndDisplayImageTask(ImageLoaderConfiguration configuration, ImageLoadingInfo imageLoadingInfo, Handler handler) {
 		this.configuration = configuration;
@@ -75,41 +122,224 @@ final class LoadAndDisplayImageTask implements Runnable {
 		loggingEnabled = configuration.loggingEnabled;
 		uri = imageLoadingInfo.uri;
 		memoryCacheKey = imageLoadingInfo.memoryCacheKey;
-		imageView = imageLoadingInfo.imageView;
 		targetSize = imageLoadingInfo.targetSize;
 		options = imageLoadingInfo.options;
-		listener = imageLoadingInfo.listener;
+		viewScaleType = ViewScaleType.fromImageView(imageLoadingInfo.imageView);
+		priority = imageLoadingInfo.priority;
+		discCacheOnly = imageLoadingInfo.discCacheOnly;
+		revalidation = imageLoadingInfo.revalidation;
+
+		attachedLoadingInfos.add(imageLoadingInfo);
+	}
+
+	/**
+	 * Attaches request for the same image to this task. Loaded image will be delivered to attached request too.<br />
+	 * <b>NOTE:</b> If attached request has higher priority than task then task must be re-queued to apply new
+	 * priority (see {@link #getPriority()}).
+	 * 
+	 * @return <b>true</b> - if request was attached, <b>false</b> - if task is already finished or request needs image
+	 *         decoded in other way.
+	 */
+	boolean attach(ImageLoadingInfo loadingInfo) {
+		if (!isCompatible(loadingInfo)) return false;
+
+		synchronized (attachedLoadingInfos) {
+			if (finished) return false;
+
+			attachedLoadingInfos.add(loadingInfo);
+			return true;
+		}
+	}
+
+	/**
+	 * Detaches requests of incoming {@link ImageView} from this task. Detached requests get
+	 * {@link ImageLoadingListener#onLoadingCancelled()} event.
+	 * 
+	 * @return <b>true</b> - if task has no attached requests anymore (so it can be removed from execution queue)
+	 */
+	boolean detach(ImageView imageView) {
+		synchronized (attachedLoadingInfos) {
+			boolean detached = false;
+			for (Iterator<ImageLoadingInfo> it = attachedLoadingInfos.iterator(); it.hasNext();) {
+				ImageLoadingInfo loadingInfo = it.next();
+				if (loadingInfo.imageView == imageView) {
+					fireImageLoadingCancelledEvent(loadingInfo.listener);
+					it.remove();
+					detached = true;
+				}
+			}
+
+			if (detached && attachedLoadingInfos.isEmpty()) {
+				finished = true;
+				if (loggingEnabled) L.i(LOG_TASK_CANCELLED, memoryCacheKey);
+				return true;
+			}
+			return false;
+		}
+	}
+
+	/** Returns the highest priority among priorities of requests which were attached to this task */
+	LoadingPriority getPriority() {
+		return priority;
+	}
+
+	/**
+	 * Raises priority of task up to priority of attached request. Must be called while task is out of executor queue,
+	 * otherwise task must be re-queued after update.
+	 */
+	void updatePriority(ImageLoadingInfo loadingInfo) {
+		priority = priority.max(loadingInfo.priority);
+	}
+
+	long getQueueSequence() {
+		return queueSequence;
+	}
+
+	void setQueueSequence(long queueSequence) {
+		this.queueSequence = queueSequence;
+	}
+
+	private boolean isCompatible(ImageLoadingInfo loadingInfo) {
+		DisplayImageOptions attachedOptions = loadingInfo.options;
+		return memoryCacheKey.equals(loadingInfo.memoryCacheKey)
+				&& options.isCacheInMemory() == attachedOptions.isCacheInMemory()
+				&& options.isCacheOnDisc() == attachedOptions.isCacheOnDisc()
+				&& options.getImageScaleType() == attachedOptions.getImageScaleType()
+				&& options.getBitmapConfig() == attachedOptions.getBitmapConfig()
+				&& viewScaleType == ViewScaleType.fromImageView(loadingInfo.imageView)
+				&& discCacheOnly == loadingInfo.discCacheOnly;
+	}
+
+	private boolean isFinished() {
+		synchronized (attachedLoadingInfos) {
+			return finished;
+		}
+	}
+
+	/** Finishes task and returns infos of requests which are still attached to it */
+	private List<ImageLoadingInfo> finish() {
+		synchronized (attachedLoadingInfos) {
+			finished = true;
+			List<ImageLoadingInfo> loadingInfos = new ArrayList<ImageLoadingInfo>(attachedLoadingInfos);
+			attachedLoadingInfos.clear();
+			return loadingInfos;
+		}
+	}
+
+	/**
+	 * Checks whether task is still needed before it's routed to executor. Task isn't needed if all its requests were
+	 * detached or their ImageViews were reused, then it's removed from loading tasks.
+	 * 
+	 * @return <b>true</b> - if task was cancelled and it shouldn't be executed
+	 */
+	boolean cancelIfNotActual() {
+		if (isFinished() || checkTaskIsNotActual()) {
+			ImageLoader.getInstance().removeLoadingTask(memoryCacheKey, this);
+			return true;
+		}
+		return false;
+	}
+
+	/** Finishes task, all attached requests get {@link ImageLoadingListener#onLoadingCancelled()} event */
+	void cancel() {
+		for (ImageLoadingInfo loadingInfo : finish()) {
+			fireImageLoadingCancelledEvent(loadingInfo.listener);
+		}
+	}
+
+	/** Marks task as task of decoding stage. Such task decodes image from disc cache. */
+	void setDecodingStage() {
+		decodingStage = true;
 	}
 
 	@Override
 	public void run() {
-		AtomicBoolean pause = ImageLoader.getInstance().getPause();
-		if (pause.get()) {
-			synchronized (pause) {
-				if (loggingEnabled) L.i(LOG_WAITING_FOR_RESUME, memoryCacheKey);
-				try {
-					pause.wait();
-				} catch (InterruptedException e) {
-					L.e(LOG_TASK_INTERRUPTED, memoryCacheKey);
-					return;
-				}
-				if (loggingEnabled) L.i(LOG_RESUME_AFTER_PAUSE, memoryCacheKey);
+		boolean passedToNextStage = false; // or held by ImageLoader until resume or end of delay
+		try {
+			if (checkTaskIsNotActual()) return;
+			passedToNextStage = holdIfPaused();
+			if (passedToNextStage) return;
+
+			if (!started) {
+				started = true;
+				passedToNextStage = delayIfNeed();
+				if (passedToNextStage) return;
+			}
+
+			if (decodingStage) {
+				passedToNextStage = decodeAndDisplayImage();
+			} else {
+				passedToNextStage = loadImage();
 			}
+		} finally {
+			if (deliveredBitmap != null) {
+				ImageLoader.getInstance().onDeliveryFinished(deliveredBitmap);
+				deliveredBitmap = null;
+			}
+			if (!passedToNextStage) {
+				// Requests which didn't get any event (e.g. task was interrupted) are cancelled
+				cancel();
+				ImageLoader.getInstance().removeLoadingTask(memoryCacheKey, this);
+			}
+		}
+	}
+
+	/**
+	 * Passes task to ImageLoader if it's paused. Task doesn't occupy executor thread while waiting, ImageLoader
+	 * resubmits it on resume.
+	 * 
+	 * @return true - if task was held by ImageLoader
+	 */
+	private boolean holdIfPaused() {
+		if (ImageLoader.getInstance().holdIfPaused(this)) {
+			if (loggingEnabled) L.i(LOG_WAITING_FOR_RESUME, memoryCacheKey);
+			return true;
 		}
-		if (checkTaskIsNotActual()) return;
+		return false;
+	}
 
+	/**
+	 * Schedules resubmission of task after delay (if it's needed by display options). Task doesn't occupy executor
+	 * thread during delay.
+	 * 
+	 * @return true - if task was delayed
+	 */
+	private boolean delayIfNeed() {
 		if (options.isDelayBeforeLoading()) {
 			if (loggingEnabled) L.i(LOG_DELAY_BEFORE_LOADING, options.getDelayBeforeLoading(), memoryCacheKey);
-			try {
-				Thread.sleep(options.getDelayBeforeLoading());
-			} catch (InterruptedException e) {
-				L.e(LOG_TASK_INTERRUPTED, memoryCacheKey);
-				return;
-			}
-
-			if (checkTaskIsNotActual()) return;
+			return ImageLoader.getInstance().delayTask(this, options.getDelayBeforeLoading());
 		}
+		return false;
+	}
+
+	ImageSize getTargetSize() {
+		return targetSize;
+	}
+
+	/** Returns true if task revalidates expired image in disc cache */
+	boolean isRevalidation() {
+		return revalidation;
+	}
+
+	/** Returns true if task is at decoding stage (decodes image from disc cache) */
+	boolean isDecodingStage() {
+		return decodingStage;
+	}
 
+	/** Returns true if image is loaded from network (image URI has HTTP or HTTPS scheme) */
+	boolean isNetworkImage() {
+		return uri.regionMatches(true, 0, URI_SCHEME_HTTP, 0, URI_SCHEME_HTTP.length())
+				|| uri.regionMatches(true, 0, URI_SCHEME_HTTPS, 0, URI_SCHEME_HTTPS.length());
+	}
+
+	/**
+	 * Loading stage. Downloads image into disc cache and passes task to decoding stage. If image shouldn't be cached on
+	 * disc then image is decoded and displayed right here. If image should be only cached on disc then task is finished
+	 * without decoding (or it's passed to decoding stage if downloaded image should be resized for disc cache).
+	 * 
+	 * @return true - if task was passed to decoding stage
+	 */
+	private boolean loadImage() {
 		ReentrantLock loadFromUriLock = imageLoadingInfo.loadFromUriLock;
 		if (loggingEnabled) {
 			L.i(LOG_START_DISPLAY_IMAGE_TASK, memoryCacheKey);
@@ -121,20 +351,38 @@ final class LoadAndDisplayImageTask implements Runnable {
 		loadFromUriLock.lock();
 		Bitmap bmp;
 		try {
-			if (checkTaskIsNotActual()) return;
+			if (checkTaskIsNotActual()) return false;
 
-			bmp = ImageLoader.getInstance().getMemoryCache().get(memoryCacheKey);
+			bmp = discCacheOnly ? null : startDelivery(peekMemoryCache());
 			if (bmp == null) {
-				bmp = tryLoadBitmap();
-				if (bmp == null) return;
+				DiscCacheAware discCache = configuration.discCache;
+				File imageFile = discCache.get(uri);
+				if (!revalidation && isImageCachedOnDisc(discCache, uri)) {
+					if (discCacheOnly) {
+						fireImageCachedOnDiscEvent();
+						return false;
+					}
+					// Image was cached on disc while task was waiting
+					return passToDecodingStage();
+				}
+
+				if (options.isCacheOnDisc() || discCacheOnly) {
+					if (tryCacheImageOnDisc(imageFile)) {
+						if (discCacheOnly && (!downloaded || !hasDiscCacheExtraOptions())) {
+							fireImageCachedOnDiscEvent();
+							return false;
+						}
+						return passToDecodingStage();
+					}
+					return false;
+				}
 
-				if (checkTaskIsNotActual() || checkTaskIsInterrupted()) return;
+				bmp = startDelivery(tryLoadBitmap());
+				if (bmp == null) return false;
 
-				if (options.isCacheInMemory()) {
-					if (loggingEnabled) L.i(LOG_CACHE_IMAGE_IN_MEMORY, memoryCacheKey);
+				if (checkTaskIsNotActual() || checkTaskIsInterrupted()) return false;
 
-					configuration.memoryCache.put(memoryCacheKey, bmp);
-				}
+				cacheBitmapInMemoryIfNeed(bmp);
 			} else {
 				if (loggingEnabled) L.i(LOG_GET_IMAGE_FROM_MEMORY_CACHE_AFTER_WAITING, memoryCacheKey);
 			}
@@ -142,33 +390,131 @@ final class LoadAndDisplayImageTask implements Runnable {
 			loadFromUriLock.unlock();
 		}
 
+		displayBitmap(bmp);
+		return false;
+	}
+
+	/**
+	 * Decoding stage. Decodes image from disc cache and displays it. If cached image can't be decoded then task is
+	 * passed back to loading stage to download image again.
+	 * 
+	 * @return true - if task was passed to loading stage
+	 */
+	private boolean decodeAndDisplayImage() {
+		if (loggingEnabled) L.i(LOG_START_DECODING_STAGE, memoryCacheKey);
+
+		Bitmap bmp = discCacheOnly ? null : startDelivery(peekMemoryCache());
+		if (bmp == null) {
+			File imageFile = configuration.discCache.get(uri);
+			if (downloaded && hasDiscCacheExtraOptions()) {
+				if (!tryResizeImageOnDisc(imageFile)) return false;
+
+				putImageIntoDiscCache(imageFile);
+			}
+			if (discCacheOnly) {
+				fireImageCachedOnDiscEvent();
+				return false;
+			}
+
+			bmp = startDelivery(tryDecodeCachedImage(imageFile));
+			if (bmp == null) {
+				if (!downloaded && !isFinished()) {
+					// Cached image was broken, so load image again
+					decodingStage = false;
+					return ImageLoader.getInstance().passToLoadingStage(this);
+				}
+				return false;
+			}
+
+			if (checkTaskIsNotActual() || checkTaskIsInterrupted()) return false;
+
+			cacheBitmapInMemoryIfNeed(bmp);
+		} else {
+			if (loggingEnabled) L.i(LOG_GET_IMAGE_FROM_MEMORY_CACHE_AFTER_WAITING, memoryCacheKey);
+		}
+
+		displayBitmap(bmp);
+		return false;
+	}
+
+	private boolean passToDecodingStage() {
+		if (checkTaskIsNotActual() || checkTaskIsInterrupted()) return false;
+
+		decodingStage = true;
+		return ImageLoader.getInstance().passToDecodingStage(this);
+	}
+
+	/**
+	 * Checks memory cache again (image could be cached while task was waiting). Memory cache was already requested for
+	 * the image by ImageLoader, so this check isn't counted as a request if cache tracks usage.
+	 */
+	private Bitmap peekMemoryCache() {
+		MemoryCacheAware<String, Bitmap> memoryCache = configuration.memoryCache;
+		if (memoryCache instanceof PeekableMemoryCacheAware) {
+			return ((PeekableMemoryCacheAware<String, Bitmap>) memoryCache).peek(memoryCacheKey);
+		}
+		return memoryCache.get(memoryCacheKey);
+	}
+
+	private void cacheBitmapInMemoryIfNeed(Bitmap bmp) {
+		if (options.isCacheInMemory()) {
+			if (loggingEnabled) L.i(LOG_CACHE_IMAGE_IN_MEMORY, memoryCacheKey);
+
+			configuration.memoryCache.put(memoryCacheKey, bmp);
+		}
+	}
+
+	/**
+	 * Starts delivery of bitmap by this task, so bitmap won't be pooled if it's evicted from memory cache before it's
+	 * displayed. Delivery is finished at the end of task run.
+	 * 
+	 * @return Incoming bitmap or <b>null</b> if there is no bitmap or it was already pooled
+	 */
+	private Bitmap startDelivery(Bitmap bmp) {
+		if (bmp == null || !ImageLoader.getInstance().onDeliveryStarted(bmp)) return null;
+		deliveredBitmap = bmp;
+		return bmp;
+	}
+
+	/** Delivers bitmap to all attached requests */
+	private void displayBitmap(Bitmap bmp) {
 		if (checkTaskIsNotActual() || checkTaskIsInterrupted()) return;
 
-		DisplayBitmapTask displayBitmapTask = new DisplayBitmapTask(bmp, imageLoadingInfo);
-		displayBitmapTask.setLoggingEnabled(loggingEnabled);
-		handler.post(displayBitmapTask);
+		for (ImageLoadingInfo loadingInfo : finish()) {
+			ImageLoader.getInstance().onDeliveryStarted(bmp);
+			DisplayBitmapTask displayBitmapTask = new DisplayBitmapTask(bmp, loadingInfo);
+			displayBitmapTask.setLoggingEnabled(loggingEnabled);
+			handler.post(displayBitmapTask);
+		}
 	}
 
 	/**
-	 * Check whether the image URI of this task matches to image URI which is actual for current ImageView at this
-	 * moment and fire {@link ImageLoadingListener#onLoadingCancelled()} event if it doesn't.
+	 * Check whether the image URI of this task matches to image URI which is actual for ImageViews of attached requests
+	 * at this moment. Requests which ImageViews were reused are detached from the task and get
+	 * {@link ImageLoadingListener#onLoadingCancelled()} event.
+	 * 
+	 * @return <b>true</b> - if all ImageViews were reused (so task should be cancelled)
 	 */
 	private boolean checkTaskIsNotActual() {
-		String currentCacheKey = ImageLoader.getInstance().getLoadingUriForView(imageView);
-		// Check whether memory cache key (image URI) for current ImageView is actual. 
-		// If ImageView is reused for another task then current task should be cancelled.
-		boolean imageViewWasReused = !memoryCacheKey.equals(currentCacheKey);
-		if (imageViewWasReused) {
-			handler.post(new Runnable() {
-				@Override
-				public void run() {
-					listener.onLoadingCancelled();
+		synchronized (attachedLoadingInfos) {
+			for (Iterator<ImageLoadingInfo> it = attachedLoadingInfos.iterator(); it.hasNext();) {
+				ImageLoadingInfo loadingInfo = it.next();
+				String currentCacheKey = loadingInfo.imageViewBinding.getMemoryCacheKey();
+				// Check whether memory cache key (image URI) for current ImageView is actual. 
+				// If ImageView is reused for another task then request should be cancelled.
+				if (!memoryCacheKey.equals(currentCacheKey)) {
+					fireImageLoadingCancelledEvent(loadingInfo.listener);
+					it.remove();
 				}
-			});
-		}
+			}
 
-		if (loggingEnabled && imageViewWasReused) L.i(LOG_TASK_CANCELLED, memoryCacheKey);
-		return imageViewWasReused;
+			boolean taskIsNotActual = attachedLoadingInfos.isEmpty();
+			if (taskIsNotActual) {
+				finished = true;
+				if (loggingEnabled) L.i(LOG_TASK_CANCELLED, memoryCacheKey);
+			}
+			return taskIsNotActual;
+		}
 	}
 
 	/** Check whether the current task was interrupted */
@@ -178,46 +524,84 @@ final class LoadAndDisplayImageTask implements Runnable {
 		return interrupted;
 	}
 
+	/** Downloads image and decodes it without caching on disc */
 	private Bitmap tryLoadBitmap() {
-		DiscCacheAware discCache = configuration.discCache;
-		File imageFile = discCache.get(uri);
-
 		Bitmap bitmap = null;
 		try {
-			// Try to load image from disc cache
-			if (imageFile.exists()) {
-				if (loggingEnabled) L.i(LOG_LOAD_IMAGE_FROM_DISC_CACHE, memoryCacheKey);
+			if (loggingEnabled) L.i(LOG_LOAD_IMAGE_FROM_INTERNET, memoryCacheKey);
 
-				Bitmap b = decodeImage(imageFile.toURI());
-				if (b != null) {
-					return b;
-				}
+			bitmap = decodeImage(new URI(uri), downloader);
+			if (bitmap == null) {
+				fireImageLoadingFailedEvent(FailReason.IO_ERROR);
 			}
+		} catch (IOException e) {
+			L.e(e);
+			fireImageLoadingFailedEvent(FailReason.IO_ERROR);
+		} catch (OutOfMemoryError e) {
+			L.e(e);
+			fireImageLoadingFailedEvent(FailReason.OUT_OF_MEMORY);
+		} catch (Throwable e) {
+			L.e(e);
+			fireImageLoadingFailedEvent(FailReason.UNKNOWN);
+		}
+		return bitmap;
+	}
 
-			// Load image from Web
-			if (loggingEnabled) L.i(LOG_LOAD_IMAGE_FROM_INTERNET, memoryCacheKey);
+	/** @return true - if image was downloaded and saved on disc successfully */
+	private boolean tryCacheImageOnDisc(File imageFile) {
+		try {
+			if (loggingEnabled) {
+				L.i(LOG_LOAD_IMAGE_FROM_INTERNET, memoryCacheKey);
+				L.i(LOG_CACHE_IMAGE_ON_DISC, memoryCacheKey);
+			}
+
+			if (!saveImageOnDisc(imageFile)) {
+				if (loggingEnabled) L.i(LOG_IMAGE_NOT_MODIFIED, memoryCacheKey);
+				((RevalidatingDiscCacheAware) configuration.discCache).renew(uri);
+				return true;
+			}
+			downloaded = true;
+			if (!hasDiscCacheExtraOptions() && !packedOnDisc) {
+				// Image with extra options will be put into disc cache after resizing
+				putImageIntoDiscCache(imageFile);
+			}
+			return true;
+		} catch (IOException e) {
+			L.e(e);
+			fireImageLoadingFailedEvent(FailReason.IO_ERROR);
+		} catch (Throwable e) {
+			L.e(e);
+			fireImageLoadingFailedEvent(FailReason.UNKNOWN);
+		}
+		return false;
+	}
 
-			URI imageUriForDecoding;
-			if (options.isCacheOnDisc()) {
-				if (loggingEnabled) L.i(LOG_CACHE_IMAGE_ON_DISC, memoryCacheKey);
+	/**
+	 * Decodes image from disc cache. Broken cached image is deleted. If image wasn't downloaded by this task then
+	 * failure event isn't fired for broken image because image will be downloaded again.
+	 */
+	private Bitmap tryDecodeCachedImage(File imageFile) {
+		Bitmap bitmap = null;
+		try {
+			if (loggingEnabled) L.i(LOG_LOAD_IMAGE_FROM_DISC_CACHE, memoryCacheKey);
 
-				saveImageOnDisc(imageFile);
-				discCache.put(uri, imageFile);
-				imageUriForDecoding = imageFile.toURI();
+			DiscCacheAware discCache = configuration.discCache;
+			if (discCache instanceof PackedDiscCacheAware) {
+				bitmap = decodeImage(imageFile.toURI(), new PackedDiscCacheImageDownloader((PackedDiscCacheAware) discCache, uri));
 			} else {
-				imageUriForDecoding = new URI(uri);
+				bitmap = decodeImage(imageFile.toURI(), downloader);
 			}
-
-			bitmap = decodeImage(imageUriForDecoding);
 			if (bitmap == null) {
-				fireImageLoadingFailedEvent(FailReason.IO_ERROR);
+				if (downloaded) {
+					fireImageLoadingFailedEvent(FailReason.IO_ERROR);
+				} else {
+					deleteCachedImage(imageFile);
+				}
 			}
 		} catch (IOException e) {
 			L.e(e);
 			fireImageLoadingFailedEvent(FailReason.IO_ERROR);
-			if (imageFile.exists()) {
-				imageFile.delete();
-			}
+			deleteCachedImage(imageFile);
 		} catch (OutOfMemoryError e) {
 			L.e(e);
 			fireImageLoadingFailedEvent(FailReason.OUT_OF_MEMORY);
@@ -228,27 +612,105 @@ final class LoadAndDisplayImageTask implements Runnable {
 		return bitmap;
 	}
 
-	private Bitmap decodeImage(URI imageUri) throws IOException {
+	/** Deletes broken image from disc cache */
+	private void deleteCachedImage(File imageFile) {
+		DiscCacheAware discCache = configuration.discCache;
+		if (discCache instanceof PackedDiscCacheAware) {
+			((PackedDiscCacheAware) discCache).remove(uri);
+		} else if (imageFile.exists()) {
+			imageFile.delete();
+		}
+	}
+
+	/**
+	 * Checks whether image is cached on disc. Image cached in {@link PackedDiscCacheAware packed disc cache} can have no
+	 * separate file.
+	 */
+	static boolean isImageCachedOnDisc(DiscCacheAware discCache, String uri) {
+		if (discCache instanceof PackedDiscCacheAware) {
+			return ((PackedDiscCacheAware) discCache).contains(uri);
+		}
+		return discCache.get(uri).exists();
+	}
+
+	private boolean hasDiscCacheExtraOptions() {
+		return configuration.maxImageWidthForDiscCache > 0 || configuration.maxImageHeightForDiscCache > 0;
+	}
+
+	/**
+	 * Resizes and compresses downloaded image according to disc cache extra options. Original image is kept if
+	 * compression failed.
+	 * 
+	 * @return false - if failure event was fired
+	 */
+	private boolean tryResizeImageOnDisc(File imageFile) {
+		try {
+			ImageSize targetImageSize = new ImageSize(configuration.maxImageWidthForDiscCache, configuration.maxImageHeightForDiscCache);
+			ImageDecoder decoder = createImageDecoder(imageFile.toURI(), downloader);
+			Bitmap bmp = decoder.decode(targetImageSize, ImageScaleType.IN_SAMPLE_INT, ViewScaleType.FIT_INSIDE);
+			if (bmp == null) return true; // Image will be decoded (and checked) again right after
+
+			AtomicFile atomicFile = createAtomicFile(imageFile);
+			FileOutputStream fos = atomicFile.startWrite();
+			boolean written = false;
+			try {
+				OutputStream os = new BufferedOutputStream(fos, BUFFER_SIZE);
+				bmp.compress(configuration.imageCompressFormatForDiscCache, configuration.imageQualityForDiscCache, os);
+				os.flush();
+				atomicFile.finishWrite(fos, configuration.syncDiscCacheWrites);
+				written = true;
+			} finally {
+				if (!written) atomicFile.failWrite(fos);
+			}
+			releaseBitmap(bmp);
+			return true;
+		} catch (IOException e) {
+			L.e(e);
+			fireImageLoadingFailedEvent(FailReason.IO_ERROR);
+		} catch (OutOfMemoryError e) {
+			L.e(e);
+			fireImageLoadingFailedEvent(FailReason.OUT_OF_MEMORY);
+		} catch (Throwable e) {
+			L.e(e);
+			fireImageLoadingFailedEvent(FailReason.UNKNOWN);
+		}
+		if (imageFile.exists()) {
+			imageFile.delete();
+		}
+		return false;
+	}
+
+	private ImageDecoder createImageDecoder(URI imageUri, ImageDownloader imageDownloader) {
+		ImageDecoder decoder = new ImageDecoder(imageUri, imageDownloader, options);
+		decoder.setBitmapPool(configuration.bitmapPool);
+		decoder.setLoggingEnabled(loggingEnabled);
+		return decoder;
+	}
+
+	/** Returns unused bitmap into pool (if it's possible) or recycles it */
+	private void releaseBitmap(Bitmap bmp) {
+		if (configuration.bitmapPool == null || !configuration.bitmapPool.put(bmp)) {
+			bmp.recycle();
+		}
+	}
+
+	private Bitmap decodeImage(URI imageUri, ImageDownloader imageDownloader) throws IOException {
 		Bitmap bmp = null;
 
 		if (configuration.handleOutOfMemory) {
-			bmp = decodeWithOOMHandling(imageUri);
+			bmp = decodeWithOOMHandling(imageUri, imageDownloader);
 		} else {
-			ImageDecoder decoder = new ImageDecoder(imageUri, downloader, options);
-			decoder.setLoggingEnabled(loggingEnabled);
-			ViewScaleType viewScaleType = ViewScaleType.fromImageView(imageView);
+			ImageDecoder decoder = createImageDecoder(imageUri, imageDownloader);
 			bmp = decoder.decode(targetSize, options.getImageScaleType(), viewScaleType);
 		}
 		return bmp;
 	}
 
-	private Bitmap decodeWithOOMHandling(URI imageUri) throws IOException {
+	private Bitmap decodeWithOOMHandling(URI imageUri, ImageDownloader imageDownloader) throws IOException {
 		Bitmap result = null;
-		ImageDecoder decoder = new ImageDecoder(imageUri, downloader, options);
-		decoder.setLoggingEnabled(loggingEnabled);
+		ImageDecoder decoder = createImageDecoder(imageUri, imageDownloader);
 		for (int attempt = 1; attempt <= ATTEMPT_COUNT_TO_DECODE_BITMAP; attempt++) {
 			try {
-				ViewScaleType viewScaleType = ViewScaleType.fromImageView(imageView);
 				result = decoder.decode(targetSize, options.getImageScaleType(), viewScaleType);
 			} catch (OutOfMemoryError e) {
 				L.e(e);
@@ -259,6 +721,9 @@ final class LoadAndDisplayImageTask implements Runnable {
 						break;
 					case 2:
 						configuration.memoryCache.clear();
+						if (configuration.bitmapPool != null) {
+							configuration.bitmapPool.clear();
+						}
 						System.gc();
 						break;
 					case 3:
@@ -273,47 +738,124 @@ final class LoadAndDisplayImageTask implements Runnable {
 		return result;
 	}
 
-	private void saveImageOnDisc(File targetFile) throws IOException, URISyntaxException {
-		int width = configuration.maxImageWidthForDiscCache;
-		int height = configuration.maxImageHeightForDiscCache;
-		if (width > 0 || height > 0) {
-			// Download, decode, compress and save image
-			ImageSize targetImageSize = new ImageSize(width, height);
-			ImageDecoder decoder = new ImageDecoder(new URI(uri), downloader, options);
-			decoder.setLoggingEnabled(loggingEnabled);
-			Bitmap bmp = decoder.decode(targetImageSize, ImageScaleType.IN_SAMPLE_INT, ViewScaleType.FIT_INSIDE);
-
-			OutputStream os = new BufferedOutputStream(new FileOutputStream(targetFile), BUFFER_SIZE);
-			boolean compressedSuccessfully = bmp.compress(configuration.imageCompressFormatForDiscCache, configuration.imageQualityForDiscCache, os);
-			if (compressedSuccessfully) {
-				bmp.recycle();
-				return;
+	/**
+	 * Downloads image into disc cache file. Expired image is downloaded only if it was changed on server. Small image
+	 * is put right into packed disc cache (if it's used and image isn't resized for disc cache), without file.
+	 *
+	 * @return false - if revalidated image wasn't changed (so it wasn't downloaded)
+	 */
+	private boolean saveImageOnDisc(File targetFile) throws IOException, URISyntaxException {
+		InputStream is;
+		DiscCacheAware discCache = configuration.discCache;
+		if (discCache instanceof RevalidatingDiscCacheAware) {
+			if (revalidation) {
+				if (loggingEnabled) L.i(LOG_REVALIDATE_IMAGE_ON_DISC, memoryCacheKey);
+				validators = ((RevalidatingDiscCacheAware) discCache).getValidators(uri);
+			} else {
+				validators = new CacheValidators();
 			}
+			is = downloader.getStream(new URI(uri), validators);
+			if (is == null && revalidation) return false;
+		} else {
+			is = downloader.getStream(new URI(uri));
 		}
-
-		// If previous compression wasn't needed or failed
-		// Download and save original image
-		InputStream is = downloader.getStream(new URI(uri));
 		try {
-			OutputStream os = new BufferedOutputStream(new FileOutputStream(targetFile), BUFFER_SIZE);
-			try {
-				FileUtils.copyStream(is, os);
-			} finally {
-				os.close();
+			if (discCache instanceof PackedDiscCacheAware && !hasDiscCacheExtraOptions()) {
+				PackedDiscCacheAware packedDiscCache = (PackedDiscCacheAware) discCache;
+				byte[] buffer = new byte[packedDiscCache.getMaxPackedFileSize() + 1];
+				int length = FileUtils.readFully(is, buffer);
+				if (length < buffer.length) {
+					packedDiscCache.put(uri, buffer, length);
+					packedOnDisc = true;
+				} else {
+					writeImageFile(targetFile, new SequenceInputStream(new ByteArrayInputStream(buffer), is));
+				}
+			} else {
+				writeImageFile(targetFile, is);
 			}
 		} finally {
 			is.close();
 		}
+		return true;
+	}
+
+	private void writeImageFile(File targetFile, InputStream is) throws IOException {
+		AtomicFile atomicFile = createAtomicFile(targetFile);
+		FileOutputStream fos = atomicFile.startWrite();
+		boolean written = false;
+		try {
+			OutputStream os = new BufferedOutputStream(fos, BUFFER_SIZE);
+			FileUtils.copyStream(is, os);
+			os.flush();
+			atomicFile.finishWrite(fos, configuration.syncDiscCacheWrites);
+			written = true;
+		} finally {
+			if (!written) atomicFile.failWrite(fos);
+		}
+	}
+
+	/** Puts downloaded image into disc cache (with its validators if disc cache keeps them) */
+	private void putImageIntoDiscCache(File imageFile) {
+		DiscCacheAware discCache = configuration.discCache;
+		if (discCache instanceof RevalidatingDiscCacheAware) {
+			((RevalidatingDiscCacheAware) discCache).put(uri, imageFile, validators);
+		} else {
+			discCache.put(uri, imageFile);
+		}
+		if (revalidation) {
+			// Memory cache can contain bitmaps decoded from previous image
+			MemoryCacheUtil.removeFromCache(uri, configuration.memoryCache);
+		}
+	}
+
+	/** Returns writer of cache file. File is written into temporary file and then it's moved into cache. */
+	private AtomicFile createAtomicFile(File targetFile) {
+		DiscCacheAware discCache = configuration.discCache;
+		File tempFile;
+		if (discCache instanceof BaseDiscCache) {
+			tempFile = ((BaseDiscCache) discCache).getTempFile(targetFile);
+		} else {
+			tempFile = new File(targetFile.getPath() + '.' + Thread.currentThread().getId() + ".tmp");
+		}
+		return new AtomicFile(targetFile, tempFile);
 	}
 
 	private void fireImageLoadingFailedEvent(final FailReason failReason) {
 		if (!Thread.interrupted()) {
+			for (ImageLoadingInfo loadingInfo : finish()) {
+				final ImageLoadingListener listener = loadingInfo.listener;
+				handler.post(new Runnable() {
+					@Override
+					public void run() {
+						listener.onLoadingFailed(failReason);
+					}
+				});
+			}
+		}
+	}
+
+	/** Finishes task which only caches image on disc. Attached requests get onLoadingComplete(null) event. */
+	private void fireImageCachedOnDiscEvent() {
+		if (checkTaskIsNotActual() || checkTaskIsInterrupted()) return;
+
+		if (loggingEnabled) L.i(LOG_IMAGE_CACHED_ON_DISC, memoryCacheKey);
+		for (ImageLoadingInfo loadingInfo : finish()) {
+			final ImageLoadingListener listener = loadingInfo.listener;
 			handler.post(new Runnable() {
 				@Override
 				public void run() {
-					listener.onLoadingFailed(failReason);
+					listener.onLoadingComplete(null);
 				}
 			});
 		}
 	}
+
+	private void fireImageLoadingCancelledEvent(final ImageLoadingListener listener) {
+		handler.post(new Runnable() {
+			@Override
+			public void run() {
+				listener.onLoadingCancelled();
+			}
+		});
+	}
 }
@@ -0,0 +1,36 @@
+package com.nostra13.universalimageloader.core;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+
+import com.nostra13.universalimageloader.cache.disc.PackedDiscCacheAware;
+import com.nostra13.universalimageloader.core.download.ImageDownloader;
+
+/**
+ * Retrieves {@link InputStream} of image cached in {@link PackedDiscCacheAware packed disc cache}. Incoming URI is
+ * ignored, image is read by cache key.
+ */
+final class PackedDiscCacheImageDownloader extends ImageDownloader {
+
+	private final PackedDiscCacheAware discCache;
+	private final String key;
+
+	PackedDiscCacheImageDownloader(PackedDiscCacheAware discCache, String key) {
+		this.discCache = discCache;
+		this.key = key;
+	}
+
+	@Override
+	public InputStream getStream(URI imageUri) throws IOException {
+		InputStream is = discCache.openStream(key);
+		if (is == null) throw new FileNotFoundException("Image isn't cached on disc: " + key);
+		return is;
+	}
+
+	@Override
+	protected InputStream getStreamFromNetwork(URI imageUri) throws IOException {
+		return getStream(imageUri);
+	}
+}
@@ -0,0 +1,59 @@
+package com.nostra13.universalimageloader.core;
+
+import java.util.Comparator;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.nostra13.universalimageloader.core.assist.LoadingPriority;
+import com.nostra13.universalimageloader.core.assist.QueueProcessingType;
+
+/**
+ * Queue for {@linkplain LoadAndDisplayImageTask load'n'display tasks}. Gives out tasks by their
+ * {@linkplain LoadingPriority priority}, tasks with equal priority are given out in order defined by
+ * {@link QueueProcessingType}.
+ * 
+ * @see LoadingPriority
+ */
+final class PriorityTaskQueue extends PriorityBlockingQueue<Runnable> {
+
+	private static final long serialVersionUID = 2857915317547153642L;
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	private final AtomicLong sequence = new AtomicLong();
+
+	PriorityTaskQueue(QueueProcessingType tasksProcessingType) {
+		super(INITIAL_CAPACITY, new TaskComparator(tasksProcessingType == QueueProcessingType.LIFO));
+	}
+
+	@Override
+	public boolean offer(Runnable task) {
+		((LoadAndDisplayImageTask) task).setQueueSequence(sequence.incrementAndGet());
+		return super.offer(task);
+	}
+
+	private static class TaskComparator implements Comparator<Runnable> {
+
+		private final boolean lifo;
+
+		TaskComparator(boolean lifo) {
+			this.lifo = lifo;
+		}
+
+		@Override
+		public int compare(Runnable r1, Runnable r2) {
+			LoadAndDisplayImageTask task1 = (LoadAndDisplayImageTask) r1;
+			LoadAndDisplayImageTask task2 = (LoadAndDisplayImageTask) r2;
+			int result = task1.getPriority().compareTo(task2.getPriority());
+			if (result == 0) {
+				long sequence1 = task1.getQueueSequence();
+				long sequence2 = task2.getQueueSequence();
+				result = sequence1 < sequence2 ? -1 : (sequence1 == sequence2 ? 0 : 1);
+				if (lifo) {
+					result = -result;
+				}
+			}
+			return result;
+		}
+	}
+}
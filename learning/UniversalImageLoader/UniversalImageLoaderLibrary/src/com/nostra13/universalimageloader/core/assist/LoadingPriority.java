@@ -0,0 +1,19 @@
+package com.nostra13.universalimageloader.core.assist;
+
+/**
+ * Priority of image loading task. Tasks with higher priority are executed first. Tasks with equal priority are
+ * executed in order defined by {@link QueueProcessingType}.
+ */
+public enum LoadingPriority {
+	/** Image is loaded for {@link android.widget.ImageView ImageView} which is displayed at this moment */
+	VISIBLE,
+	/** Image is loaded without displaying (e.g. by <b>ImageLoader.loadImage(...)</b>) */
+	NORMAL,
+	/** Image is loaded in advance, before it's needed. Such tasks don't hinder other tasks. */
+	PREFETCH;
+
+	/** Returns higher priority of this and incoming priorities */
+	public LoadingPriority max(LoadingPriority priority) {
+		return priority.ordinal() < ordinal() ? priority : this;
+	}
+}
@@ -7,6 +7,7 @@ import java.util.List;
 import android.graphics.Bitmap;
 
 import com.nostra13.universalimageloader.cache.memory.MemoryCacheAware;
+import com.nostra13.universalimageloader.cache.memory.impl.UriIndexedMemoryCache;
 import com.nostra13.universalimageloader.core.ImageLoaderConfiguration;
 
 /**
@@ -17,7 +18,10 @@ import com.nostra13.universalimageloader.core.ImageLoaderConfiguration;
 public final class MemoryCacheUtil {
 
 	private static final String URI_AND_SIZE_SEPARATOR = "_";
+	private static final char WIDTH_AND_HEIGHT_SEPARATOR = 'x';
 	private static final String MEMORY_CACHE_KEY_FORMAT = "%1$s" + URI_AND_SIZE_SEPARATOR + "%2$dx%3$d";
+	/** Max length of "_WxH" key suffix */
+	private static final int MAX_SIZE_SUFFIX_LENGTH = 23;
 
 	private MemoryCacheUtil() {
 	}
@@ -28,7 +32,61 @@ public final class MemoryCacheUtil {
 	 * height.
 	 */
 	public static String generateKey(String imageUri, ImageSize targetSize) {
-		return String.format(MEMORY_CACHE_KEY_FORMAT, imageUri, targetSize.getWidth(), targetSize.getHeight());
+		return generateKey(imageUri, targetSize.getWidth(), targetSize.getHeight());
+	}
+
+	/**
+	 * Generates key for memory cache for incoming image (URI + size).<br />
+	 * Pattern for cache key - {@value #MEMORY_CACHE_KEY_FORMAT}, where (1) - image URI, (2) - image width, (3) - image
+	 * height.
+	 */
+	public static String generateKey(String imageUri, int width, int height) {
+		return new StringBuilder(imageUri.length() + MAX_SIZE_SUFFIX_LENGTH).append(imageUri).append(URI_AND_SIZE_SEPARATOR).append(width)
+				.append(WIDTH_AND_HEIGHT_SEPARATOR).append(height).toString();
+	}
+
+	/**
+	 * Checks whether memory cache key was generated for incoming image URI and size. Doesn't allocate memory so it can
+	 * be used to reuse previously generated keys.
+	 */
+	public static boolean isKeyFor(String memoryCacheKey, String imageUri, int width, int height) {
+		if (memoryCacheKey == null || !memoryCacheKey.startsWith(imageUri)) return false;
+
+		int index = imageUri.length();
+		int length = memoryCacheKey.length();
+		if (index >= length || memoryCacheKey.charAt(index) != URI_AND_SIZE_SEPARATOR.charAt(0)) return false;
+
+		index = matchNumber(memoryCacheKey, index + 1, width);
+		if (index < 0 || index >= length || memoryCacheKey.charAt(index) != WIDTH_AND_HEIGHT_SEPARATOR) return false;
+
+		return matchNumber(memoryCacheKey, index + 1, height) == length;
+	}
+
+	/**
+	 * Checks whether decimal number at incoming position of string is equal to incoming number
+	 * 
+	 * @return Position after the number or -1 if number isn't equal
+	 */
+	private static int matchNumber(String s, int start, int number) {
+		if (number < 0) return -1;
+
+		int index = start;
+		int value = 0;
+		while (index < s.length()) {
+			char c = s.charAt(index);
+			if (c < '0' || c > '9') break;
+
+			value = value * 10 + (c - '0');
+			if (value > number) return -1;
+			index++;
+		}
+		return index > start && value == number ? index : -1;
+	}
+
+	/** Returns image URI which incoming memory cache key was generated for */
+	public static String getImageUri(String memoryCacheKey) {
+		int separatorIndex = memoryCacheKey.lastIndexOf(URI_AND_SIZE_SEPARATOR);
+		return separatorIndex < 0 ? memoryCacheKey : memoryCacheKey.substring(0, separatorIndex);
 	}
 
 	public static Comparator<String> createFuzzyKeyComparator() {
@@ -50,9 +108,10 @@ public final class MemoryCacheUtil {
 	 */
 	public static List<Bitmap> findCachedBitmapsForImageUri(String imageUri, MemoryCacheAware<String, Bitmap> memoryCache) {
 		List<Bitmap> values = new ArrayList<Bitmap>();
-		for (String key : memoryCache.keys()) {
-			if (key.startsWith(imageUri)) {
-				values.add(memoryCache.get(key));
+		for (String key : findCacheKeysForImageUri(imageUri, memoryCache)) {
+			Bitmap value = memoryCache.get(key);
+			if (value != null) {
+				values.add(value);
 			}
 		}
 		return values;
@@ -65,6 +124,10 @@ public final class MemoryCacheUtil {
 	 * denyCacheImageMultipleSizesInMemory()} option in {@linkplain ImageLoaderConfiguration configuration}
 	 */
 	public static List<String> findCacheKeysForImageUri(String imageUri, MemoryCacheAware<String, Bitmap> memoryCache) {
+		if (memoryCache instanceof UriIndexedMemoryCache) {
+			return ((UriIndexedMemoryCache) memoryCache).getKeysForUri(imageUri);
+		}
+
 		List<String> values = new ArrayList<String>();
 		for (String key : memoryCache.keys()) {
 			if (key.startsWith(imageUri)) {
@@ -81,6 +144,11 @@ public final class MemoryCacheUtil {
 	 * denyCacheImageMultipleSizesInMemory()} option in {@linkplain ImageLoaderConfiguration configuration}
 	 */
 	public static void removeFromCache(String imageUri, MemoryCacheAware<String, Bitmap> memoryCache) {
+		if (memoryCache instanceof UriIndexedMemoryCache) {
+			((UriIndexedMemoryCache) memoryCache).removeForUri(imageUri);
+			return;
+		}
+
 		List<String> keysToRemove = new ArrayList<String>();
 		for (String key : memoryCache.keys()) {
 			if (key.startsWith(imageUri)) {
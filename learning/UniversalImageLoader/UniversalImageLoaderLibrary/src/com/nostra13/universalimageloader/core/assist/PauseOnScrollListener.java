@@ -10,7 +10,8 @@ import com.nostra13.universalimageloader.core.ImageLoader;
 /**
  * Listener-helper for {@linkplain AbsListView list views} ({@link ListView}, {@link GridView}) which can
  * {@linkplain ImageLoader#pause() pause ImageLoader's tasks} while list view is scrolling (touch scrolling and/or
- * fling). It prevents redundant loadings.<br />
+ * fling). It prevents redundant loadings. {@linkplain PausePolicy Pause policy} defines which tasks are paused, e.g.
+ * disc cached images can keep loading while only network downloads are paused.<br />
  * Set it to your list view's {@link AbsListView#setOnScrollListener(OnScrollListener) setOnScrollListener(...)}.<br />
  * This listener can wrap your custom {@linkplain OnScrollListener listener}.
  * 
@@ -18,6 +19,7 @@ import com.nostra13.universalimageloader.core.ImageLoader;
  */
 public class PauseOnScrollListener implements OnScrollListener {
 
+	private final PausePolicy pausePolicy;
 	private final boolean pauseOnScroll;
 	private final boolean pauseOnFling;
 	private final OnScrollListener externalListener;
@@ -41,6 +43,31 @@ public class PauseOnScrollListener implements OnScrollListener {
 	 *            be get scroll events
 	 */
 	public PauseOnScrollListener(boolean pauseOnScroll, boolean pauseOnFling, OnScrollListener customListener) {
+		this(PausePolicy.ALL, pauseOnScroll, pauseOnFling, customListener);
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param pausePolicy Defines which tasks are paused during scrolling
+	 * @param pauseOnScroll Whether {@linkplain ImageLoader#pause(PausePolicy) pause ImageLoader} during touch scrolling
+	 * @param pauseOnFling Whether {@linkplain ImageLoader#pause(PausePolicy) pause ImageLoader} during fling
+	 */
+	public PauseOnScrollListener(PausePolicy pausePolicy, boolean pauseOnScroll, boolean pauseOnFling) {
+		this(pausePolicy, pauseOnScroll, pauseOnFling, null);
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param pausePolicy Defines which tasks are paused during scrolling
+	 * @param pauseOnScroll Whether {@linkplain ImageLoader#pause(PausePolicy) pause ImageLoader} during touch scrolling
+	 * @param pauseOnFling Whether {@linkplain ImageLoader#pause(PausePolicy) pause ImageLoader} during fling
+	 * @param customListener Your custom {@link OnScrollListener} for {@linkplain AbsListView list view} which also will
+	 *            be get scroll events
+	 */
+	public PauseOnScrollListener(PausePolicy pausePolicy, boolean pauseOnScroll, boolean pauseOnFling, OnScrollListener customListener) {
+		this.pausePolicy = pausePolicy;
 		this.pauseOnScroll = pauseOnScroll;
 		this.pauseOnFling = pauseOnFling;
 		externalListener = customListener;
@@ -54,12 +81,12 @@ public class PauseOnScrollListener implements OnScrollListener {
 				break;
 			case OnScrollListener.SCROLL_STATE_TOUCH_SCROLL:
 				if (pauseOnScroll) {
-					ImageLoader.getInstance().pause();
+					ImageLoader.getInstance().pause(pausePolicy);
 				}
 				break;
 			case OnScrollListener.SCROLL_STATE_FLING:
 				if (pauseOnFling) {
-					ImageLoader.getInstance().pause();
+					ImageLoader.getInstance().pause(pausePolicy);
 				}
 				break;
 		}
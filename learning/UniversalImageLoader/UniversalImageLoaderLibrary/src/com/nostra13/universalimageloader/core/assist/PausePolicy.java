@@ -0,0 +1,19 @@
+package com.nostra13.universalimageloader.core.assist;
+
+/**
+ * Defines which tasks are held while {@linkplain com.nostra13.universalimageloader.core.ImageLoader ImageLoader} is
+ * paused. Tasks which aren't held keep loading images during pause.
+ * 
+ * @see PauseOnScrollListener
+ */
+public enum PausePolicy {
+	/** All tasks are held */
+	ALL,
+	/** Only tasks which download images from network (images with HTTP or HTTPS URIs) are held */
+	NETWORK,
+	/**
+	 * Tasks which download images from network and tasks which decode large images (larger than a quarter of screen)
+	 * are held. Disc cached thumbnails and local images keep loading.
+	 */
+	NETWORK_AND_LARGE_DECODES
+}
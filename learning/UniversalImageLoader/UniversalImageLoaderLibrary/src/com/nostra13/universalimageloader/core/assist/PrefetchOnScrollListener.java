@@ -0,0 +1,169 @@
+package com.nostra13.universalimageloader.core.assist;
+
+import java.util.LinkedList;
+
+import android.os.SystemClock;
+import android.widget.AbsListView;
+import android.widget.AbsListView.OnScrollListener;
+import android.widget.GridView;
+import android.widget.ListView;
+
+import com.nostra13.universalimageloader.core.DisplayImageOptions;
+import com.nostra13.universalimageloader.core.ImageLoader;
+
+/**
+ * Listener-helper for {@linkplain AbsListView list views} ({@link ListView}, {@link GridView}) which
+ * {@linkplain ImageLoader#prefetchImage(android.content.Context, String, ImageSize, DisplayImageOptions) prefetches}
+ * images of items which will appear soon in scroll direction. So items appearing at the edge of list view are usually
+ * loaded from disc or memory cache, not from network.<br />
+ * Count of prefetched items grows with scroll velocity. Prefetching is executed with the lowest priority, so it doesn't
+ * delay loading of visible images. Prefetching is cancelled when scroll direction is changed.<br />
+ * Set it to your list view's {@link AbsListView#setOnScrollListener(OnScrollListener) setOnScrollListener(...)}.<br />
+ * This listener can wrap your custom {@linkplain OnScrollListener listener} (e.g. {@link PauseOnScrollListener}).
+ * Note that prefetch tasks are paused by {@linkplain PausePolicy pause policy} as usual network tasks.
+ */
+public class PrefetchOnScrollListener implements OnScrollListener {
+
+	/** Provides image URIs for list view items */
+	public interface ImageUriProvider {
+		/**
+		 * Returns image URI for item at position (position is the same as in
+		 * {@link OnScrollListener#onScroll(AbsListView, int, int, int) onScroll()} call). Returns <b>null</b> if item
+		 * has no image.
+		 */
+		String getImageUri(int position);
+	}
+
+	private static final int DIRECTION_NONE = 0;
+	private static final int DIRECTION_DOWN = 1;
+	private static final int DIRECTION_UP = -1;
+
+	/** Time (in seconds) of scrolling which is covered by prefetching in addition to prefetch count */
+	private static final float LOOKAHEAD_TIME = 0.5f;
+	/** Max count of prefetched items (in prefetch counts) */
+	private static final int MAX_LOOKAHEAD_FACTOR = 3;
+
+	private final ImageUriProvider uriProvider;
+	private final int prefetchCount;
+	private final ImageSize targetSize;
+	private final DisplayImageOptions options;
+	private final OnScrollListener externalListener;
+
+	/** URIs of images which were prefetched since last direction change (the oldest first) */
+	private final LinkedList<String> prefetchedUris = new LinkedList<String>();
+
+	private int lastFirstVisibleItem = -1;
+	private long lastScrollTime;
+	private int direction = DIRECTION_NONE;
+	/** The nearest position (in scroll direction) which isn't prefetched yet */
+	private int nextPrefetchPosition;
+
+	/**
+	 * Constructor
+	 *
+	 * @param uriProvider Provides image URIs for list view items
+	 * @param prefetchCount Count of items beyond visible ones which are prefetched during slow scrolling
+	 * @param targetSize Size of item's ImageView. If <b>null</b> - images are only cached on disc, otherwise they are
+	 *            also decoded and cached in memory (if options allow it).
+	 * @param options {@linkplain DisplayImageOptions Display image options} which are used for images displaying in list
+	 *            view. If <b>null</b> - default display image options from configuration will be used.
+	 */
+	public PrefetchOnScrollListener(ImageUriProvider uriProvider, int prefetchCount, ImageSize targetSize, DisplayImageOptions options) {
+		this(uriProvider, prefetchCount, targetSize, options, null);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param uriProvider Provides image URIs for list view items
+	 * @param prefetchCount Count of items beyond visible ones which are prefetched during slow scrolling
+	 * @param targetSize Size of item's ImageView. If <b>null</b> - images are only cached on disc, otherwise they are
+	 *            also decoded and cached in memory (if options allow it).
+	 * @param options {@linkplain DisplayImageOptions Display image options} which are used for images displaying in list
+	 *            view. If <b>null</b> - default display image options from configuration will be used.
+	 * @param customListener Your custom {@link OnScrollListener} for {@linkplain AbsListView list view} which also will
+	 *            be get scroll events
+	 */
+	public PrefetchOnScrollListener(ImageUriProvider uriProvider, int prefetchCount, ImageSize targetSize, DisplayImageOptions options, OnScrollListener customListener) {
+		if (uriProvider == null) throw new IllegalArgumentException("uriProvider must not be null");
+		if (prefetchCount <= 0) throw new IllegalArgumentException("prefetchCount must be a positive number");
+
+		this.uriProvider = uriProvider;
+		this.prefetchCount = prefetchCount;
+		this.targetSize = targetSize;
+		this.options = options;
+		externalListener = customListener;
+	}
+
+	@Override
+	public void onScrollStateChanged(AbsListView view, int scrollState) {
+		if (externalListener != null) {
+			externalListener.onScrollStateChanged(view, scrollState);
+		}
+	}
+
+	@Override
+	public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount, int totalItemCount) {
+		if (firstVisibleItem != lastFirstVisibleItem && visibleItemCount > 0) {
+			long now = SystemClock.uptimeMillis();
+			if (lastFirstVisibleItem >= 0) {
+				int newDirection = firstVisibleItem > lastFirstVisibleItem ? DIRECTION_DOWN : DIRECTION_UP;
+				if (newDirection != direction) {
+					cancelPrefetching();
+					direction = newDirection;
+					nextPrefetchPosition = direction == DIRECTION_DOWN ? 0 : Integer.MAX_VALUE;
+				}
+
+				long elapsedTime = Math.max(1, now - lastScrollTime);
+				float velocity = Math.abs(firstVisibleItem - lastFirstVisibleItem) * 1000f / elapsedTime; // items per second
+				prefetch(view, firstVisibleItem, visibleItemCount, totalItemCount, velocity);
+			}
+			lastFirstVisibleItem = firstVisibleItem;
+			lastScrollTime = now;
+		}
+		if (externalListener != null) {
+			externalListener.onScroll(view, firstVisibleItem, visibleItemCount, totalItemCount);
+		}
+	}
+
+	/** Cancels prefetching of images which weren't loaded yet */
+	public void cancelPrefetching() {
+		ImageLoader imageLoader = ImageLoader.getInstance();
+		for (String uri : prefetchedUris) {
+			imageLoader.cancelPrefetch(uri);
+		}
+		prefetchedUris.clear();
+	}
+
+	private void prefetch(AbsListView view, int firstVisibleItem, int visibleItemCount, int totalItemCount, float velocity) {
+		int maxLookahead = MAX_LOOKAHEAD_FACTOR * prefetchCount;
+		int lookahead = Math.min(prefetchCount + (int) (velocity * LOOKAHEAD_TIME), maxLookahead);
+		if (direction == DIRECTION_DOWN) {
+			int firstHiddenItem = firstVisibleItem + visibleItemCount;
+			int end = Math.min(firstHiddenItem + lookahead, totalItemCount);
+			for (int position = Math.max(firstHiddenItem, nextPrefetchPosition); position < end; position++) {
+				prefetchItem(view, position);
+			}
+			nextPrefetchPosition = Math.max(nextPrefetchPosition, end);
+		} else {
+			int end = Math.max(firstVisibleItem - lookahead, 0);
+			for (int position = Math.min(firstVisibleItem - 1, nextPrefetchPosition); position >= end; position--) {
+				prefetchItem(view, position);
+			}
+			nextPrefetchPosition = Math.min(nextPrefetchPosition, end - 1);
+		}
+
+		// URIs of old prefetches are forgotten, their images are most likely loaded already
+		while (prefetchedUris.size() > maxLookahead) {
+			prefetchedUris.removeFirst();
+		}
+	}
+
+	private void prefetchItem(AbsListView view, int position) {
+		String uri = uriProvider.getImageUri(position);
+		if (uri != null) {
+			ImageLoader.getInstance().prefetchImage(view.getContext(), uri, targetSize, options);
+			prefetchedUris.add(uri);
+		}
+	}
+}
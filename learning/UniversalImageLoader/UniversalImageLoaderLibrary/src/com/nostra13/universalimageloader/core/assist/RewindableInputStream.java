@@ -0,0 +1,56 @@
+package com.nostra13.universalimageloader.core.assist;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Buffered stream which remembers its beginning so it can be {@linkplain #rewind() rewound} once after reading of
+ * image header. It allows to decode image bounds and image itself from one source stream (without second download).<br />
+ * Marks set by stream consumers (e.g. {@link android.graphics.BitmapFactory BitmapFactory}) are ignored until stream
+ * is rewound, so they can't invalidate the beginning mark.
+ */
+public class RewindableInputStream extends BufferedInputStream {
+
+	private static final int BUFFER_SIZE = 8 * 1024; // 8 Kb
+
+	private boolean rewound = false;
+
+	/**
+	 * @param inputStream
+	 *            Source stream
+	 * @param rewindLimit
+	 *            Maximum count of bytes which can be read before {@link #rewind()} call. If more bytes are read then
+	 *            stream can't be rewound.
+	 */
+	public RewindableInputStream(InputStream inputStream, int rewindLimit) {
+		super(inputStream, BUFFER_SIZE);
+		super.mark(rewindLimit);
+	}
+
+	/**
+	 * Moves stream position to stream beginning. Can be called only once.
+	 *
+	 * @return <b>true</b> - if stream was rewound successfully, <b>false</b> - if too many bytes were read from stream
+	 *         (more than rewind limit) and source stream should be reopened.
+	 */
+	public synchronized boolean rewind() {
+		if (rewound) return false;
+
+		rewound = true;
+		try {
+			super.reset();
+		} catch (IOException e) {
+			return false;
+		}
+		super.mark(0); // release buffered header
+		return true;
+	}
+
+	@Override
+	public synchronized void mark(int readlimit) {
+		if (rewound) {
+			super.mark(readlimit);
+		}
+	}
+}
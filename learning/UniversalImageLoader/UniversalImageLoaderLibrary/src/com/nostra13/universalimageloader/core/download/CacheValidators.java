@@ -0,0 +1,44 @@
+package com.nostra13.universalimageloader.core.download;
+
+/**
+ * Validators of loaded image (values of HTTP headers "ETag" and "Last-Modified"). Validators are kept with cached image
+ * and are sent with conditional request, so server can answer that image wasn't changed instead of sending image again.
+ *
+ * @see ImageDownloader#getStream(java.net.URI, CacheValidators)
+ */
+public class CacheValidators {
+
+	private String eTag;
+	private String lastModified;
+
+	public CacheValidators() {
+	}
+
+	public CacheValidators(String eTag, String lastModified) {
+		this.eTag = eTag;
+		this.lastModified = lastModified;
+	}
+
+	/** Returns value of "ETag" header or <b>null</b> */
+	public String getETag() {
+		return eTag;
+	}
+
+	public void setETag(String eTag) {
+		this.eTag = eTag;
+	}
+
+	/** Returns value of "Last-Modified" header or <b>null</b> */
+	public String getLastModified() {
+		return lastModified;
+	}
+
+	public void setLastModified(String lastModified) {
+		this.lastModified = lastModified;
+	}
+
+	/** Returns true if there are no validators */
+	public boolean isEmpty() {
+		return eTag == null && lastModified == null;
+	}
+}
@@ -1,29 +1,196 @@
 package com.nostra13.universalimageloader.core.download;
 
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 
+import org.apache.http.Header;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpGet;
-import org.apache.http.entity.BufferedHttpEntity;
 
+import com.nostra13.universalimageloader.core.assist.FlushedInputStream;
+
+/**
+ * Implementation of ImageDownloader which uses {@link HttpClient} for image stream retrieving. Response content isn't
+ * buffered in memory, it's streamed right from connection. Connection is released when stream is closed: it's returned
+ * into pool of HttpClient if response was read out (or its short rest can be read out), otherwise request is aborted.<br />
+ * <b>NOTE:</b> HttpClient must be thread-safe (e.g. it should use ThreadSafeClientConnManager) because images are
+ * loaded by several threads.
+ */
 public class HttpClientImageDownloader extends ImageDownloader {
 
+	private static final String HEADER_ETAG = "ETag";
+	private static final String HEADER_LAST_MODIFIED = "Last-Modified";
+	private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+	private static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+
+	private static final String ERROR_HTTP_STATUS = "Image can't be loaded, HTTP status %d [%s]";
+	private static final String ERROR_NO_CONTENT = "Response has no content [%s]";
+	private static final String ERROR_IMAGE_TOO_LARGE = "Image is larger than %d bytes [%s]";
+
+	/** Max size of response rest which is read out to return connection into pool */
+	private static final int MAX_DRAIN_SIZE = 16 * 1024; // 16 Kb
+
 	private HttpClient httpClient;
+	private long maxImageSize;
 
+	/** Creates downloader which doesn't limit image size */
 	public HttpClientImageDownloader(HttpClient httpClient) {
+		this(httpClient, 0);
+	}
+
+	/**
+	 * @param httpClient
+	 *            Thread-safe HTTP client
+	 * @param maxImageSize
+	 *            Max size of image (in bytes). Loading of larger image fails with {@link IOException}. 0 - image size
+	 *            isn't limited.
+	 */
+	public HttpClientImageDownloader(HttpClient httpClient, long maxImageSize) {
 		this.httpClient = httpClient;
+		this.maxImageSize = maxImageSize;
 	}
 
 	@Override
 	protected InputStream getStreamFromNetwork(URI imageUri) throws IOException {
+		return getStreamFromNetwork(imageUri, null);
+	}
+
+	@Override
+	protected InputStream getStreamFromNetwork(URI imageUri, CacheValidators validators) throws IOException {
 		HttpGet httpRequest = new HttpGet(imageUri.toString());
+		if (validators != null) {
+			if (validators.getETag() != null) httpRequest.addHeader(HEADER_IF_NONE_MATCH, validators.getETag());
+			if (validators.getLastModified() != null) httpRequest.addHeader(HEADER_IF_MODIFIED_SINCE, validators.getLastModified());
+		}
 		HttpResponse response = httpClient.execute(httpRequest);
 		HttpEntity entity = response.getEntity();
-		BufferedHttpEntity bufHttpEntity = new BufferedHttpEntity(entity);
-		return bufHttpEntity.getContent();
+		int statusCode = response.getStatusLine().getStatusCode();
+		if (validators != null && statusCode == HttpStatus.SC_NOT_MODIFIED) {
+			release(httpRequest, entity);
+			return null;
+		}
+		if (statusCode < 200 || statusCode >= 300) {
+			release(httpRequest, entity);
+			throw new IOException(String.format(ERROR_HTTP_STATUS, statusCode, imageUri));
+		}
+		if (entity == null) {
+			throw new IOException(String.format(ERROR_NO_CONTENT, imageUri));
+		}
+		if (maxImageSize > 0 && entity.getContentLength() > maxImageSize) {
+			httpRequest.abort();
+			throw new IOException(String.format(ERROR_IMAGE_TOO_LARGE, maxImageSize, imageUri));
+		}
+
+		if (validators != null) {
+			validators.setETag(getHeaderValue(response, HEADER_ETAG));
+			validators.setLastModified(getHeaderValue(response, HEADER_LAST_MODIFIED));
+		}
+		InputStream is = new EntityInputStream(httpRequest, entity, maxImageSize, imageUri);
+		return new FlushedInputStream(new BufferedInputStream(is, BUFFER_SIZE));
+	}
+
+	private static String getHeaderValue(HttpResponse response, String name) {
+		Header header = response.getFirstHeader(name);
+		return header == null ? null : header.getValue();
+	}
+
+	/** Releases connection of response which content isn't needed */
+	private static void release(HttpGet httpRequest, HttpEntity entity) {
+		if (entity == null) return;
+
+		long contentLength = entity.getContentLength();
+		if (contentLength >= 0 && contentLength <= MAX_DRAIN_SIZE) {
+			try {
+				entity.consumeContent();
+				return;
+			} catch (IOException e) {
+				// Connection can't be reused
+			}
+		}
+		httpRequest.abort();
+	}
+
+	/**
+	 * Stream of response content. Fails if content exceeds max image size. Releases connection on closing: connection
+	 * is returned into pool if content was read out (or its short rest can be read out), otherwise request is aborted.
+	 */
+	private static class EntityInputStream extends FilterInputStream {
+
+		private final HttpGet httpRequest;
+		private final HttpEntity entity;
+		private final long maxSize;
+		private final URI imageUri;
+		private long bytesRead;
+		private boolean endReached;
+		private boolean closed;
+
+		EntityInputStream(HttpGet httpRequest, HttpEntity entity, long maxSize, URI imageUri) throws IOException {
+			super(entity.getContent());
+			this.httpRequest = httpRequest;
+			this.entity = entity;
+			this.maxSize = maxSize;
+			this.imageUri = imageUri;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = in.read();
+			if (b == -1) {
+				endReached = true;
+			} else {
+				onRead(1);
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int count) throws IOException {
+			int read = in.read(buffer, offset, count);
+			if (read == -1) {
+				endReached = true;
+			} else {
+				onRead(read);
+			}
+			return read;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = in.skip(n);
+			onRead(skipped);
+			return skipped;
+		}
+
+		private void onRead(long count) throws IOException {
+			bytesRead += count;
+			if (maxSize > 0 && bytesRead > maxSize) {
+				close();
+				throw new IOException(String.format(ERROR_IMAGE_TOO_LARGE, maxSize, imageUri));
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (closed) return;
+			closed = true;
+
+			long contentLength = entity.getContentLength();
+			boolean canBeReadOut = contentLength >= 0 && contentLength - bytesRead <= MAX_DRAIN_SIZE;
+			if (endReached || canBeReadOut && bytesRead <= contentLength) {
+				try {
+					entity.consumeContent(); // reads out the rest and returns connection into pool
+					return;
+				} catch (IOException e) {
+					// Connection can't be reused
+				}
+			}
+			httpRequest.abort();
+		}
 	}
 }
@@ -32,6 +32,23 @@ public abstract class ImageDownloader {
 		}
 	}
 
+	/**
+	 * Retrieves {@link InputStream} of image by URI if image was changed since it was loaded with incoming validators.
+	 * Validators are supported for web URLs only, other images are retrieved unconditionally.
+	 *
+	 * @param validators
+	 *            Validators of cached image (can be empty). Validators of retrieved image are set into this object.
+	 * @return Stream of image or <b>null</b> if image wasn't changed
+	 */
+	public InputStream getStream(URI imageUri, CacheValidators validators) throws IOException {
+		String scheme = imageUri.getScheme();
+		if (PROTOCOL_HTTP.equals(scheme) || PROTOCOL_HTTPS.equals(scheme)) {
+			return getStreamFromNetwork(imageUri, validators);
+		} else {
+			return getStream(imageUri);
+		}
+	}
+
 	/**
 	 * Retrieves {@link InputStream} of image by URI from other source. Should be overriden by successors to implement
 	 * image downloading from special sources (not local file and not web URL).
@@ -43,6 +60,16 @@ public abstract class ImageDownloader {
 	/** Retrieves {@link InputStream} of image by URI (image is located in the network) */
 	protected abstract InputStream getStreamFromNetwork(URI imageUri) throws IOException;
 
+	/**
+	 * Retrieves {@link InputStream} of image by URI (image is located in the network) if image was changed. Should be
+	 * overriden by successors to support validators, image is retrieved unconditionally by default.
+	 *
+	 * @see #getStream(URI, CacheValidators)
+	 */
+	protected InputStream getStreamFromNetwork(URI imageUri, CacheValidators validators) throws IOException {
+		return getStreamFromNetwork(imageUri);
+	}
+
 	/** Retrieves {@link InputStream} of image by URI (image is located on the local file system or SD card) */
 	protected InputStream getStreamFromFile(URI imageUri) throws IOException {
 		return new BufferedInputStream(imageUri.toURL().openStream(), BUFFER_SIZE);
@@ -1,16 +1,28 @@
 package com.nostra13.universalimageloader.core.download;
 
 import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
 import java.net.URI;
 import java.net.URLConnection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 import com.nostra13.universalimageloader.core.assist.FlushedInputStream;
 
 /**
- * Default implementation of ImageDownloader. Uses {@link URLConnection} for image stream retrieving.
- * 
+ * Default implementation of ImageDownloader. Uses {@link URLConnection} for image stream retrieving.<br />
+ * Connections are reused by platform's HTTP connection pool (keep-alive). Downloader helps to return connection into
+ * pool: if image stream (or error stream) is closed before its end then short rest of response is read out, long rest
+ * causes disconnection. Pool can be tuned and connections per host can be limited by
+ * {@link #URLConnectionImageDownloader(int, int, int, long)}.
+ *
  * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
  */
 public class URLConnectionImageDownloader extends ImageDownloader {
@@ -19,9 +31,25 @@ public class URLConnectionImageDownloader extends ImageDownloader {
 	public static final int DEFAULT_HTTP_CONNECT_TIMEOUT = 5 * 1000; // milliseconds
 	/** {@value} */
 	public static final int DEFAULT_HTTP_READ_TIMEOUT = 20 * 1000; // milliseconds
+	/** {@value} */
+	public static final long DEFAULT_KEEP_ALIVE_DURATION = 5 * 60 * 1000; // milliseconds
+
+	private static final String HEADER_ETAG = "ETag";
+	private static final String HEADER_LAST_MODIFIED = "Last-Modified";
+	private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+	private static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+
+	private static final String ERROR_NO_FREE_CONNECTION = "No connection of host %s was freed during read timeout";
+
+	/** Max size of response rest which is read out to keep connection alive */
+	private static final int MAX_DRAIN_SIZE = 16 * 1024; // 16 Kb
 
 	private int connectTimeout;
 	private int readTimeout;
+	private int maxConnectionsPerHost;
+
+	/** Permits of open connections by hosts */
+	private final Map<String, Semaphore> hostPermits = new HashMap<String, Semaphore>();
 
 	public URLConnectionImageDownloader() {
 		this(DEFAULT_HTTP_CONNECT_TIMEOUT, DEFAULT_HTTP_READ_TIMEOUT);
@@ -32,11 +60,194 @@ public class URLConnectionImageDownloader extends ImageDownloader {
 		this.readTimeout = readTimeout;
 	}
 
+	/**
+	 * Creates downloader which limits open connections per host and tunes HTTP connection pool.<br />
+	 * <b>NOTE:</b> Pool settings are set as system properties ("http.keepAlive", "http.maxConnections",
+	 * "http.keepAliveDuration"), so they are applied to all HTTP connections of application. Create downloader before
+	 * any HTTP connection is opened because platform can read these properties once. Keep-alive is broken on Android
+	 * before 2.2 (Froyo), don't use this constructor there.
+	 *
+	 * @param maxConnectionsPerHost
+	 *            Max count of connections which are open simultaneously for one host. The same count of idle
+	 *            connections per host is kept in pool. Downloading waits for free connection of host not longer than
+	 *            read timeout, then it fails with {@link SocketTimeoutException}.
+	 * @param keepAliveDuration
+	 *            Time (in milliseconds) after which idle pooled connection is closed
+	 */
+	public URLConnectionImageDownloader(int connectTimeout, int readTimeout, int maxConnectionsPerHost, long keepAliveDuration) {
+		this(connectTimeout, readTimeout);
+		this.maxConnectionsPerHost = maxConnectionsPerHost;
+		System.setProperty("http.keepAlive", "true");
+		System.setProperty("http.maxConnections", String.valueOf(maxConnectionsPerHost));
+		System.setProperty("http.keepAliveDuration", String.valueOf(keepAliveDuration));
+	}
+
 	@Override
 	public InputStream getStreamFromNetwork(URI imageUri) throws IOException {
-		URLConnection conn = imageUri.toURL().openConnection();
-		conn.setConnectTimeout(connectTimeout);
-		conn.setReadTimeout(readTimeout);
-		return new FlushedInputStream(new BufferedInputStream(conn.getInputStream(), BUFFER_SIZE));
+		return getStreamFromNetwork(imageUri, null);
+	}
+
+	@Override
+	protected InputStream getStreamFromNetwork(URI imageUri, CacheValidators validators) throws IOException {
+		Semaphore permit = acquireHostPermit(imageUri);
+		InputStream is = null;
+		try {
+			URLConnection conn = imageUri.toURL().openConnection();
+			conn.setConnectTimeout(connectTimeout);
+			conn.setReadTimeout(readTimeout);
+			if (validators != null) {
+				if (validators.getETag() != null) conn.setRequestProperty(HEADER_IF_NONE_MATCH, validators.getETag());
+				if (validators.getLastModified() != null) conn.setRequestProperty(HEADER_IF_MODIFIED_SINCE, validators.getLastModified());
+			}
+			is = new ConnectionInputStream(conn, getInputStream(conn), permit);
+			if (validators != null) {
+				if (conn instanceof HttpURLConnection && ((HttpURLConnection) conn).getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+					is.close();
+					return null;
+				}
+				validators.setETag(conn.getHeaderField(HEADER_ETAG));
+				validators.setLastModified(conn.getHeaderField(HEADER_LAST_MODIFIED));
+			}
+			return new FlushedInputStream(new BufferedInputStream(is, BUFFER_SIZE));
+		} finally {
+			if (is == null && permit != null) permit.release();
+		}
+	}
+
+	/** Returns stream of connection. Error response is read out (if it's short) so connection can be reused. */
+	private InputStream getInputStream(URLConnection conn) throws IOException {
+		try {
+			return conn.getInputStream();
+		} catch (IOException e) {
+			if (conn instanceof HttpURLConnection) {
+				HttpURLConnection httpConn = (HttpURLConnection) conn;
+				InputStream errorStream = httpConn.getErrorStream();
+				if (errorStream != null) {
+					if (!drain(errorStream, MAX_DRAIN_SIZE)) {
+						httpConn.disconnect();
+					}
+					errorStream.close();
+				}
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Waits for free connection of image host if connections per host are limited. Limit is never exceeded: if no
+	 * connection is freed during read timeout then downloading fails.
+	 *
+	 * @return Acquired permit or <b>null</b> if connections aren't limited
+	 * @throws SocketTimeoutException
+	 *             if no connection of image host was freed during read timeout
+	 */
+	private Semaphore acquireHostPermit(URI imageUri) throws IOException {
+		if (maxConnectionsPerHost <= 0) return null;
+
+		String host = imageUri.getScheme() + "://" + imageUri.getHost() + ":" + imageUri.getPort();
+		Semaphore permits;
+		synchronized (hostPermits) {
+			permits = hostPermits.get(host);
+			if (permits == null) {
+				permits = new Semaphore(maxConnectionsPerHost);
+				hostPermits.put(host, permits);
+			}
+		}
+		try {
+			if (!permits.tryAcquire(readTimeout, TimeUnit.MILLISECONDS)) {
+				throw new SocketTimeoutException(String.format(ERROR_NO_FREE_CONNECTION, host));
+			}
+			return permits;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+	}
+
+	/**
+	 * Reads stream out.
+	 *
+	 * @return true - if stream end was reached before <b>maxSize</b> bytes were read
+	 */
+	private static boolean drain(InputStream is, long maxSize) throws IOException {
+		byte[] buffer = new byte[BUFFER_SIZE];
+		long drained = 0;
+		int count;
+		while ((count = is.read(buffer)) != -1) {
+			drained += count;
+			if (drained > maxSize) return false;
+		}
+		return true;
+	}
+
+	/** Stream of connection. Returns connection into pool (or disconnects) and frees host permit on closing. */
+	private static class ConnectionInputStream extends FilterInputStream {
+
+		private final URLConnection conn;
+		private Semaphore permit;
+		private long bytesRead;
+		private boolean endReached;
+
+		ConnectionInputStream(URLConnection conn, InputStream is, Semaphore permit) {
+			super(is);
+			this.conn = conn;
+			this.permit = permit;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = in.read();
+			if (b == -1) {
+				endReached = true;
+			} else {
+				bytesRead++;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int count) throws IOException {
+			int read = in.read(buffer, offset, count);
+			if (read == -1) {
+				endReached = true;
+			} else {
+				bytesRead += read;
+			}
+			return read;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = in.skip(n);
+			bytesRead += skipped;
+			return skipped;
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				if (!endReached && !drainRest() && conn instanceof HttpURLConnection) {
+					((HttpURLConnection) conn).disconnect();
+				}
+			} catch (IOException e) {
+				// Connection can't be reused
+			} finally {
+				try {
+					in.close();
+				} finally {
+					if (permit != null) {
+						permit.release();
+						permit = null;
+					}
+				}
+			}
+		}
+
+		/** @return true - if rest of response was read out */
+		private boolean drainRest() throws IOException {
+			int contentLength = conn.getContentLength();
+			if (contentLength >= 0 && contentLength - bytesRead > MAX_DRAIN_SIZE) return false;
+			return drain(in, MAX_DRAIN_SIZE);
+		}
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,88 @@
+package com.nostra13.universalimageloader.utils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Writes file atomically. Data is written into temporary file which replaces target file only when writing is
+ * finished. So readers never see partially written target file (e.g. if writing was interrupted).<br />
+ * Usage:
+ *
+ * <pre>
+ * FileOutputStream fos = atomicFile.startWrite();
+ * boolean written = false;
+ * try {
+ * 	// write data into fos
+ * 	atomicFile.finishWrite(fos, sync);
+ * 	written = true;
+ * } finally {
+ * 	if (!written) atomicFile.failWrite(fos);
+ * }
+ * </pre>
+ */
+public final class AtomicFile {
+
+	private final File file;
+	private final File tempFile;
+
+	/**
+	 * @param file
+	 *            Target file
+	 * @param tempFile
+	 *            Temporary file for writing. It must be on the same file system as target file.
+	 */
+	public AtomicFile(File file, File tempFile) {
+		this.file = file;
+		this.tempFile = tempFile;
+	}
+
+	/** Opens temporary file for writing. Directory of temporary file is created if needed. */
+	public FileOutputStream startWrite() throws IOException {
+		File tempDir = tempFile.getParentFile();
+		if (tempDir != null && !tempDir.exists()) {
+			tempDir.mkdirs();
+		}
+		return new FileOutputStream(tempFile);
+	}
+
+	/**
+	 * Closes temporary file and moves it into target file's place.
+	 *
+	 * @param fos
+	 *            Stream returned by {@link #startWrite()}. All buffered streams over it must be flushed.
+	 * @param sync
+	 *            Whether written data should be synced with storage device before moving. It guarantees that target
+	 *            file isn't lost or broken by power loss but it makes writing slower.
+	 * @throws IOException
+	 *             if file can't be closed or moved
+	 */
+	public void finishWrite(FileOutputStream fos, boolean sync) throws IOException {
+		if (sync) {
+			fos.getFD().sync();
+		}
+		fos.close();
+		if (!tempFile.renameTo(file)) {
+			// Directory of target file could be deleted, some file systems don't replace existing file by renaming
+			File dir = file.getParentFile();
+			if (dir != null && !dir.exists()) {
+				dir.mkdirs();
+			} else {
+				file.delete();
+			}
+			if (!tempFile.renameTo(file)) {
+				throw new IOException("Can't move " + tempFile + " to " + file);
+			}
+		}
+	}
+
+	/** Closes and deletes temporary file. Target file isn't changed. */
+	public void failWrite(FileOutputStream fos) {
+		try {
+			fos.close();
+		} catch (IOException e) {
+			// Do nothing
+		}
+		tempFile.delete();
+	}
+}
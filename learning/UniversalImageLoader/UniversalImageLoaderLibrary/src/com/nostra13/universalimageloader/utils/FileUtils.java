@@ -26,4 +26,21 @@ public final class FileUtils {
 			os.write(bytes, 0, count);
 		}
 	}
+
+	/**
+	 * Reads stream into buffer until buffer is full or stream is ended
+	 * 
+	 * @return Count of read bytes
+	 */
+	public static int readFully(InputStream is, byte[] buffer) throws IOException {
+		int length = 0;
+		while (length < buffer.length) {
+			int count = is.read(buffer, length, buffer.length - length);
+			if (count == -1) {
+				break;
+			}
+			length += count;
+		}
+		return length;
+	}
 }
@@ -58,6 +58,11 @@ public final class StorageUtils {
 		return individualCacheDir;
 	}
 
+	/** Returns true if incoming directory is individual cache directory which is used only by ImageLoader */
+	public static boolean isIndividualCacheDirectory(File dir) {
+		return INDIVIDUAL_DIR_NAME.equals(dir.getName());
+	}
+
 	/**
 	 * Returns specified application cache directory. Cache directory will be created on SD card by defined path if card
 	 * is mounted. Else - Android defines cache directory on device's file system.